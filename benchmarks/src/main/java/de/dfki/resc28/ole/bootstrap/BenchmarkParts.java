@@ -0,0 +1,109 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The parts the benchmarks parse, and the configuration they run with.
+ *
+ * {@code 3001.dat} is a small part with the usual header rows and a few
+ * geometry rows, {@code 973p1a.dat} a patterned part with every kind of
+ * meta row and a few hundred geometry rows, and {@code large.dat} is
+ * generated with the header of the latter and 50,000 geometry rows, as the
+ * largest parts of the library have.
+ */
+final class BenchmarkParts
+{
+    static final String LARGE = "large.dat";
+
+    private static final int LARGE_ROWS = 50000;
+
+    private static File directory = null;
+
+    private BenchmarkParts()
+    {
+    }
+
+    /**
+     * Configures the bootstrapper once per JVM, with an in-memory graph sink
+     * unless another one is given with {@code -Dbootstrap.graphStore}.
+     */
+    static synchronized void configure()
+    {
+        if (App.fPrefixes != null)
+            return;
+
+        if (System.getProperty("bootstrap.graphStore") == null)
+            System.setProperty("bootstrap.graphStore", "memory");
+        App.configure();
+    }
+
+    /**
+     * @return the part as a file in a temporary directory
+     */
+    static synchronized File file(String name) throws IOException
+    {
+        if (directory == null)
+        {
+            directory = Files.createTempDirectory("ole-benchmarks").toFile();
+            directory.deleteOnExit();
+        }
+
+        File file = new File(directory, name);
+        if (file.isFile())
+            return file;
+
+        if (name.equals(LARGE))
+            Files.write(file.toPath(), large().getBytes(StandardCharsets.UTF_8));
+        else
+        {
+            InputStream in = BenchmarkParts.class.getResourceAsStream("/parts/" + name);
+            if (in == null)
+                throw new IOException("No such benchmark part: " + name);
+            try
+            {
+                Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        file.deleteOnExit();
+        return file;
+    }
+
+    static String text(String name) throws IOException
+    {
+        return new String(Files.readAllBytes(file(name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static String large() throws IOException
+    {
+        String header = text("973p1a.dat");
+        header = header.substring(0, header.indexOf("\r\n1 ")).replace("973p1a.dat", LARGE);
+
+        // the same rows on every run, so that runs can be compared
+        Random random = new Random(LARGE_ROWS);
+        StringBuilder part = new StringBuilder(header).append("\r\n");
+        for (int i = 0; i < LARGE_ROWS; i++)
+        {
+            part.append(i % 3 == 0 ? "4 16" : "3 16");
+            for (int j = i % 3 == 0 ? 12 : 9; j > 0; j--)
+                part.append(String.format(Locale.ROOT, " %.3f", random.nextDouble() * 40 - 20));
+            part.append("\r\n");
+        }
+        return part.append("0\r\n").toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dfki.resc28.LDrawParser.LDrawLexer;
+import de.dfki.resc28.LDrawParser.LDrawParser;
+import de.dfki.resc28.ole.bootstrap.listener.AssetListener;
+import de.dfki.resc28.ole.bootstrap.listener.LdrawDistributionListener;
+import de.dfki.resc28.ole.bootstrap.listener.ListenerMultiplexer;
+
+/**
+ * Walks the listeners over the parse tree of a part, which is parsed once
+ * up front, so that only building the graphs is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerBenchmark
+{
+    @Param({ "3001.dat", "973p1a.dat", BenchmarkParts.LARGE })
+    public String part;
+
+    private File file;
+    private ParseTree tree;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        BenchmarkParts.configure();
+        file = BenchmarkParts.file(part);
+
+        LDrawParser parser = new LDrawParser(new CommonTokenStream(new LDrawLexer(new ANTLRInputStream(BenchmarkParts.text(part)))));
+        tree = parser.file();
+    }
+
+    @Benchmark
+    public ParsedPart assetListener()
+    {
+        ParsedPart parsed = new ParsedPart(file, false);
+        ParseTreeWalker.DEFAULT.walk(new AssetListener(parsed, parsed), tree);
+        return parsed;
+    }
+
+    @Benchmark
+    public ParsedPart distributionListener()
+    {
+        ParsedPart parsed = new ParsedPart(file, false);
+        ParseTreeWalker.DEFAULT.walk(new LdrawDistributionListener(parsed, parsed), tree);
+        return parsed;
+    }
+
+    /**
+     * Both listeners in a single walk, as the bootstrapper runs them.
+     */
+    @Benchmark
+    public ParsedPart bothListeners()
+    {
+        ParsedPart parsed = new ParsedPart(file, false);
+        ParseTreeWalker.DEFAULT.walk(new ListenerMultiplexer(
+                new AssetListener(parsed, parsed),
+                new LdrawDistributionListener(parsed, parsed)), tree);
+        return parsed;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dfki.resc28.ole.bootstrap.store.InMemoryGraphSink;
+
+/**
+ * Reads, parses and writes a part end to end, as a parse worker and the
+ * writer do, into an in-memory graph sink, for each way of parsing.
+ *
+ * The parts are written as replacements, so the sink keeps one copy of
+ * their graphs however often they are written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseFileBenchmark
+{
+    @Param({ "3001.dat", "973p1a.dat", BenchmarkParts.LARGE })
+    public String part;
+
+    @Param({ "true", "false" })
+    public boolean streamingParse;
+
+    @Param({ "true", "false" })
+    public boolean twoStageParse;
+
+    @Param({ "true", "false" })
+    public boolean metadataOnly;
+
+    private File file;
+    private InMemoryGraphSink sink;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        BenchmarkParts.configure();
+        App.fStreamingParse = streamingParse;
+        App.fTwoStageParse = twoStageParse;
+        App.fMetadataOnly = metadataOnly;
+
+        file = BenchmarkParts.file(part);
+        sink = new InMemoryGraphSink();
+    }
+
+    @Benchmark
+    public ParsedPart parseFile() throws IOException
+    {
+        ParsedPart parsed = App.parseFile(file, true);
+        parsed.writeTo(sink);
+        return parsed;
+    }
+}
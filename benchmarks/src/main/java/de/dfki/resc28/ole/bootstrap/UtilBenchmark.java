@@ -0,0 +1,83 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+import org.apache.jena.rdf.model.Literal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The string helpers the listeners call for every row: building IRIs with
+ * {@link Util#joinPath(String...)} and {@link Util#urlEncoded(String)}, and
+ * literals with {@link Util#toStringLiteral(List, String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark
+{
+    private final String baseUri = "http://ole-frontend/repo/assets";
+    private final String plainName = "3001";
+    private final String escapedName = "s\\3001s01 (old).dat";
+    private List<TerminalNode> words;
+
+    @Setup
+    public void setUp()
+    {
+        words = new ArrayList<TerminalNode>();
+        for (String word : "Minifig Torso with Jacket and Shirt Pattern".split(" "))
+            words.add(new TerminalNodeImpl(new CommonToken(Token.MIN_USER_TOKEN_TYPE, word)));
+    }
+
+    @Benchmark
+    public String joinPath()
+    {
+        return Util.joinPath(baseUri, "repo/", plainName);
+    }
+
+    @Benchmark
+    public String urlEncodedPlain()
+    {
+        return Util.urlEncoded(plainName);
+    }
+
+    @Benchmark
+    public String urlEncodedEscaped()
+    {
+        return Util.urlEncoded(escapedName);
+    }
+
+    @Benchmark
+    public Literal toStringLiteral()
+    {
+        return Util.toStringLiteral(words, " ");
+    }
+
+    @Benchmark
+    public Literal toURLEncodedStringLiteral()
+    {
+        return Util.toURLEncodedStringLiteral(words, "_");
+    }
+}
@@ -6,34 +6,47 @@
 package de.dfki.resc28.ole.bootstrap;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.apache.jena.vocabulary.SKOS;
 import org.apache.jena.vocabulary.XSD;
 
-import de.dfki.resc28.LDrawParser.LDrawLexer;
-import de.dfki.resc28.LDrawParser.LDrawParser;
 import de.dfki.resc28.igraphstore.IGraphStore;
 import de.dfki.resc28.igraphstore.jena.FusekiGraphStore;
-import de.dfki.resc28.ole.bootstrap.listener.AssetListener;
-import de.dfki.resc28.ole.bootstrap.listener.LdrawDistributionListener;
+import de.dfki.resc28.ole.bootstrap.metrics.BootstrapMetrics;
+import de.dfki.resc28.ole.bootstrap.store.AdaptiveRateController;
+import de.dfki.resc28.ole.bootstrap.store.BatchingGraphSink;
+import de.dfki.resc28.ole.bootstrap.store.DeltaSyncSink;
+import de.dfki.resc28.ole.bootstrap.store.GraphSink;
+import de.dfki.resc28.ole.bootstrap.store.GraphStoreSink;
+import de.dfki.resc28.ole.bootstrap.store.GraphStoreStub;
+import de.dfki.resc28.ole.bootstrap.store.InMemoryGraphSink;
+import de.dfki.resc28.ole.bootstrap.store.NQuadsFileSink;
+import de.dfki.resc28.ole.bootstrap.store.SimulatedGraphSink;
+import de.dfki.resc28.ole.bootstrap.store.StoreSimulation;
+import de.dfki.resc28.ole.bootstrap.store.TdbGraphSink;
 import de.dfki.resc28.ole.bootstrap.vocabularies.ADMS;
 import de.dfki.resc28.ole.bootstrap.vocabularies.DCAT;
 import de.dfki.resc28.ole.bootstrap.vocabularies.FOAF;
@@ -46,17 +59,87 @@ public class App
     public static String fDistributionBaseUri = null;
     public static String fUserBaseUri = null;
     public static String fStorageURI = null;    
+    public static String fRepoUri = null;
+    public static PrefixMapping fPrefixes = null;
+    public static IriCache fIriCache = null;
+    public static AuthorRegistry fAuthors = null;
+    public static CorpusGenerator fCorpusGenerator = null;
     
     public static String fPartsDirectory = null;
+    public static int fThreads = 1;
+    public static int fQueueCapacity = 1;
+    public static File fManifestFile = null;
+    public static File fJournalFile = null;
+    public static int fCheckpointParts = 1;
+    public static int fProgressSeconds = 0;
+    public static int fSlowestParts = 0;
+    public static int fRestoreBatchGraphs = 1;
+    public static int fRestoreCheckpointGraphs = 1;
+    public static int fRepoChunkLinks = 1;
+    public static boolean fDeltaSync = false;
+    public static boolean fMetadataOnly = false;
+    public static boolean fStreamingParse = false;
+    public static long fUnbufferedThreshold = Long.MAX_VALUE;
+    public static boolean fTwoStageParse = false;
+    public static Charset fPartsCharset = StandardCharsets.UTF_8;
+    public static long fMapThreshold = Long.MAX_VALUE;
     
-    public static IGraphStore fGraphStore = null;
-    public static Model fRepoModel = null;
-    public static Resource fRepo = null;
+    // written by configure() and initRepoModel() before any worker is started,
+    // the pending repo links are only updated through the synchronized addToRepo()
+    private static IGraphStore fGraphStore = null;
+    private static GraphSink fGraphSink = null;
+    private static AdaptiveRateController fRateController = null;
+    private static StoreSimulation fStoreSimulation = null;
+    private static GraphStoreStub fGraphStoreStub = null;
+    private static Model fRepoLinks = null;
+    private static Resource fRepo = null;
     
     public static void main(String[] args) throws IOException 
     {
-        configure();
-        initRepoModel();
+        try 
+        {
+            // configure() starts the stub before it reads the remaining settings
+            configure();
+            bootstrap(args);
+        } 
+        finally 
+        {
+            // the stub's server thread would keep a failed run from exiting
+            if (fGraphStoreStub != null)
+                fGraphStoreStub.stop();
+        }
+    }
+
+    private static void bootstrap(String[] args) throws IOException 
+    {
+        if (args.length > 0 && args[0].equals("restore")) 
+        {
+            if (args.length != 2) 
+            {
+                System.err.println("Usage: App restore <dump.nq[.gz]>");
+                System.exit(1);
+            }
+
+            File dump = new File(args[1]);
+            new DumpRestore(fGraphSink, fRestoreBatchGraphs, fRestoreCheckpointGraphs, new File(dump.getPath() + ".progress")).run(dump);
+            fGraphSink.close();
+            System.exit(0);
+        }
+
+        if (args.length > 0 && args[0].equals("generate")) 
+        {
+            if (args.length != 3) 
+            {
+                System.err.println("Usage: App generate <directory> <parts>");
+                System.exit(1);
+            }
+
+            File directory = new File(args[1]);
+            int parts = Integer.parseInt(args[2]);
+            System.out.format("Generating %d synthetic parts in %s ...%n", parts, directory);
+            fCorpusGenerator.generate(directory, parts, fThreads);
+            System.exit(0);
+        }
 	
         File[] files = new File(fPartsDirectory).listFiles(new FilenameFilter() 
         {
@@ -72,18 +155,121 @@ public class App
             System.exit(1);
         }
 
-        int fileCounter = 0;
+        // parse in a stable order, so that the output does not depend on the file system
+        Arrays.sort(files);
+
+        // an interrupted bootstrap is resumed after the last part its journal committed
+        boolean resume = false;
+        Set<String> committedNames = new HashSet<String>();
+        if (Arrays.asList(args).contains("--resume")) 
+        {
+            if (fJournalFile == null) 
+            {
+                System.err.println("Error: --resume needs a journalFile");
+                System.exit(1);
+            }
+            resume = fJournalFile.isFile();
+            committedNames = ProgressJournal.load(fJournalFile);
+            if (resume)
+                System.out.format("Resuming bootstrap after %d parts recorded in %s%n", committedNames.size(), fJournalFile);
+            else
+                System.out.format("No journal %s to resume from, starting over%n", fJournalFile);
+        }
+
+        // with the manifest of a previous bootstrap, only added, changed and removed parts are handled
+        PartManifest previous = (fManifestFile != null && fManifestFile.isFile()) ? PartManifest.load(fManifestFile) : null;
+        PartManifest manifest = new PartManifest();
+        List<File> changed = new ArrayList<File>();
+        Set<File> replaced = new HashSet<File>();
 
-        for (File file : files) 
+        if (previous == null) 
         {
-            System.out.format("Parsing file: %s [%d/%d]...%n", file.getAbsolutePath(), fileCounter + 1, files.length);
+            // the store may hold an earlier bootstrap, whose repo graph is replaced once all parts are in
+            initRepoModel(!fDeltaSync && !resume);
 
-            parseFile(file);
+            if (fManifestFile != null)
+                for (File file : files)
+                    manifest.update(file, new PartManifest());
+            changed.addAll(Arrays.asList(files));
 
-            fileCounter++;
+            // ... and whose other graphs are brought up to date instead
+            if (fDeltaSync) 
+                replaced.addAll(changed);
         }
+        else 
+        {
+            initRepoModel(false);
 
-        fGraphStore.addToNamedGraph(fRepo.getURI(), fRepoModel);
+            for (File file : files) 
+            {
+                if (manifest.update(file, previous)) 
+                {
+                    changed.add(file);
+                    if (previous.get(file.getName()) != null)
+                        replaced.add(file);
+                }
+            }
+
+            List<String> removed = new ArrayList<String>(previous.paths());
+            removed.removeAll(manifest.paths());
+
+            System.out.format("Incremental bootstrap: %d added, %d changed, %d removed, %d unchanged parts%n", 
+                    changed.size() - replaced.size(), replaced.size(), removed.size(), files.length - changed.size());
+            removeParts(removed);
+        }
+
+        // the graphs of the part that was being written when the bootstrap stopped may be incomplete
+        Set<File> linked = new HashSet<File>(replaced);
+        Set<File> committed = new HashSet<File>();
+        for (File file : changed) 
+        {
+            if (committedNames.contains(file.getName()))
+                committed.add(file);
+            else if (resume)
+                replaced.add(file);
+        }
+
+        // the committed parts are only parsed again to name their authors
+        if (fAuthors == null)
+            changed.removeAll(committed);
+
+        System.out.format("Use %d parse worker(s)%n", fThreads);
+        BootstrapMetrics.get().start(changed.size() - (fAuthors != null ? committed.size() : 0), fProgressSeconds, fSlowestParts);
+        ParsePipeline pipeline = new ParsePipeline(fThreads, fQueueCapacity, fGraphSink);
+        pipeline.setVerbose(fProgressSeconds <= 0);
+        ProgressJournal journal = (fJournalFile != null) ? new ProgressJournal(fJournalFile, resume) : null;
+        if (journal != null)
+            pipeline.setJournal(journal, fCheckpointParts);
+        pipeline.run(changed.toArray(new File[changed.size()]), replaced, linked, committed);
+
+        // the user graphs are complete only once all parts are parsed
+        if (fAuthors != null)
+        {
+            fAuthors.writeTo(fGraphSink);
+            System.out.format("Wrote the graphs of %d users%n", fAuthors.size());
+        }
+
+        // a complete repo graph also drops the links to parts that are gone
+        if (previous == null && fDeltaSync)
+            fGraphSink.replaceNamedGraph(fRepo.getURI(), createRepoModel(files));
+        else
+            flushRepoLinks();
+        fGraphSink.close();
+
+        // only record the parts once they are all in the store
+        if (fManifestFile != null)
+            manifest.save(fManifestFile);
+        if (journal != null)
+            journal.delete();
+
+        BootstrapMetrics.get().stop();
+        System.out.print(BootstrapMetrics.get().summary());
+        System.out.format("Parsed %s%n", PartParser.report());
+        System.out.format("IRI cache %s%n", fIriCache.report());
+        if (fRateController != null)
+            System.out.format("Graph store requests %s%n", fRateController.report());
+        if (fStoreSimulation != null)
+            System.out.format("Simulated graph store requests:%n%s", fStoreSimulation.report());
 
         System.exit(0);
     }
@@ -115,17 +301,141 @@ public class App
             fAssetBaseUri = Util.joinPath(App.fBaseURI, "repo/assets") ;
             fDistributionBaseUri = Util.joinPath(App.fBaseURI, "repo/distributions") ;
             fUserBaseUri = Util.joinPath(App.fBaseURI, "repo/users") ;
+            fRepoUri = Util.joinPath(App.fBaseURI, "repo") ;
+            fPrefixes = createPrefixMapping();
+            fIriCache = new IriCache(fAssetBaseUri, fUserBaseUri, Integer.parseInt(getProperty(p, "iriCacheSize", "bootstrap.iriCacheSize")));
+            fAuthors = Boolean.parseBoolean(getProperty(p, "buildUsers", "bootstrap.buildUsers")) ? new AuthorRegistry() : null;
             
             fPartsDirectory = getProperty(p, "partsDirectory", "bootstrap.partsDirectory");
 
+            String threads = getProperty(p, "threads", "bootstrap.threads");
+            fThreads = (threads == null || Integer.parseInt(threads) <= 0) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+            String queueCapacity = getProperty(p, "queueCapacity", "bootstrap.queueCapacity");
+            fQueueCapacity = (queueCapacity == null || Integer.parseInt(queueCapacity) <= 0) ? 4 * fThreads : Integer.parseInt(queueCapacity);
+
+            fMetadataOnly = Boolean.parseBoolean(getProperty(p, "metadataOnly", "bootstrap.metadataOnly"));
+            fStreamingParse = Boolean.parseBoolean(getProperty(p, "streamingParse", "bootstrap.streamingParse"));
+            fUnbufferedThreshold = Long.parseLong(getProperty(p, "unbufferedThreshold", "bootstrap.unbufferedThreshold"));
+            fTwoStageParse = Boolean.parseBoolean(getProperty(p, "twoStageParse", "bootstrap.twoStageParse"));
+            fPartsCharset = Charset.forName(getProperty(p, "partsEncoding", "bootstrap.partsEncoding"));
+            fMapThreshold = Long.parseLong(getProperty(p, "mapThreshold", "bootstrap.mapThreshold"));
+
+            fRestoreBatchGraphs = Integer.parseInt(getProperty(p, "restoreBatchGraphs", "bootstrap.restoreBatchGraphs"));
+            fRestoreCheckpointGraphs = Integer.parseInt(getProperty(p, "restoreCheckpointGraphs", "bootstrap.restoreCheckpointGraphs"));
+            fCorpusGenerator = new CorpusGenerator(
+                    Long.parseLong(getProperty(p, "generateSeed", "bootstrap.generateSeed")), 
+                    Integer.parseInt(getProperty(p, "generateAuthors", "bootstrap.generateAuthors")), 
+                    Double.parseDouble(getProperty(p, "generateSubparts", "bootstrap.generateSubparts")), 
+                    Double.parseDouble(getProperty(p, "generatePrimitives", "bootstrap.generatePrimitives")), 
+                    getProperty(p, "generateGeometryRows", "bootstrap.generateGeometryRows"));
+            fRepoChunkLinks = Math.max(1, Integer.parseInt(getProperty(p, "repoChunkLinks", "bootstrap.repoChunkLinks")));
+
+            String manifestFile = getProperty(p, "manifestFile", "bootstrap.manifestFile");
+            fManifestFile = (manifestFile == null || manifestFile.isEmpty()) ? null : new File(manifestFile);
+            String journalFile = getProperty(p, "journalFile", "bootstrap.journalFile");
+            fJournalFile = (journalFile == null || journalFile.isEmpty()) ? null : new File(journalFile);
+            fCheckpointParts = Math.max(1, Integer.parseInt(getProperty(p, "checkpointParts", "bootstrap.checkpointParts")));
+            fProgressSeconds = Integer.parseInt(getProperty(p, "progressSeconds", "bootstrap.progressSeconds"));
+            fSlowestParts = Integer.parseInt(getProperty(p, "slowestParts", "bootstrap.slowestParts"));
+
             String storage = getProperty(p, "graphStore", "bootstrap.graphStore");
-            if (storage.equals("fuseki")) 
+            if (storage.equals("simulated") || storage.equals("stub")) 
+            {
+                long latency = Long.parseLong(getProperty(p, "simLatencyMillis", "bootstrap.simLatencyMillis"));
+                long jitter = Long.parseLong(getProperty(p, "simJitterMillis", "bootstrap.simJitterMillis"));
+                long bandwidth = Long.parseLong(getProperty(p, "simBandwidth", "bootstrap.simBandwidth"));
+                double failureRate = Double.parseDouble(getProperty(p, "simFailureRate", "bootstrap.simFailureRate"));
+                System.out.format("Simulate a graph store:%n  latency=%d+%dms%n  bandwidth=%d bytes/s%n  failureRate=%s ...%n", latency, jitter, bandwidth, failureRate);
+
+                fStoreSimulation = new StoreSimulation(latency, jitter, bandwidth, failureRate, 
+                        Long.parseLong(getProperty(p, "simSeed", "bootstrap.simSeed")));
+            }
+            if (storage.equals("stub")) 
+            {
+                fGraphStoreStub = new GraphStoreStub(Integer.parseInt(getProperty(p, "stubPort", "bootstrap.stubPort")), fStoreSimulation);
+                System.out.format("Started graph store stub at %s ...%n", fGraphStoreStub.getURL());
+            }
+
+            if (storage.equals("fuseki") || storage.equals("stub") || storage.equals("simulated")) 
+            {
+                fRateController = new AdaptiveRateController(
+                        Double.parseDouble(getProperty(p, "rateInitial", "bootstrap.rateInitial")), 
+                        Double.parseDouble(getProperty(p, "rateMin", "bootstrap.rateMin")), 
+                        Double.parseDouble(getProperty(p, "rateMax", "bootstrap.rateMax")), 
+                        Long.parseLong(getProperty(p, "rateTargetLatency", "bootstrap.rateTargetLatency")), 
+                        Integer.parseInt(getProperty(p, "retries", "bootstrap.retries")));
+            }
+
+            if (storage.equals("simulated")) 
+            {
+                fGraphSink = new SimulatedGraphSink(fStoreSimulation, fRateController);
+            }
+            else if (storage.equals("fuseki") || storage.equals("stub")) 
             {
                 String dataEndpoint = getProperty(p, "dataEndpoint", "bootstrap.dataEndpoint");
                 String queryEndpoint = getProperty(p, "queryEndpoint", "bootstrap.queryEndpoint");
-                System.out.format("Use Fuseki backend:%n  dataEndpoint=%s%n  queryEndpoint=%s ...%n", dataEndpoint, queryEndpoint);
+                String updateEndpoint = getProperty(p, "updateEndpoint", "bootstrap.updateEndpoint");
+                if (fGraphStoreStub != null) 
+                {
+                    dataEndpoint = fGraphStoreStub.getDataEndpoint();
+                    queryEndpoint = fGraphStoreStub.getQueryEndpoint();
+                    updateEndpoint = fGraphStoreStub.getUpdateEndpoint();
+                }
+                System.out.format("Use Fuseki backend:%n  dataEndpoint=%s%n  queryEndpoint=%s%n  updateEndpoint=%s ...%n", dataEndpoint, queryEndpoint, updateEndpoint);
 
                 fGraphStore = new FusekiGraphStore(dataEndpoint, queryEndpoint);
+
+                int batchGraphs = Integer.parseInt(getProperty(p, "batchGraphs", "bootstrap.batchGraphs"));
+                fDeltaSync = Boolean.parseBoolean(getProperty(p, "deltaSync", "bootstrap.deltaSync"));
+                if (fDeltaSync) 
+                {
+                    System.out.format("Synchronise graphs with the store in batches of up to %d graphs ...%n", batchGraphs);
+
+                    fGraphSink = new DeltaSyncSink(queryEndpoint, updateEndpoint, Math.max(1, batchGraphs), fRateController);
+                }
+                else if (batchGraphs > 1) 
+                {
+                    long batchBytes = Long.parseLong(getProperty(p, "batchBytes", "bootstrap.batchBytes"));
+                    int uploadsInFlight = Integer.parseInt(getProperty(p, "uploadsInFlight", "bootstrap.uploadsInFlight"));
+                    boolean gzipUploads = Boolean.parseBoolean(getProperty(p, "gzipUploads", "bootstrap.gzipUploads"));
+                    System.out.format("Upload in batches of up to %d graphs or %d bytes, %d at a time%s ...%n", 
+                            batchGraphs, batchBytes, uploadsInFlight, gzipUploads ? ", gzip'd" : "");
+
+                    fGraphSink = new BatchingGraphSink(dataEndpoint, updateEndpoint, batchGraphs, batchBytes, uploadsInFlight, gzipUploads, fRateController);
+                }
+                else 
+                {
+                    fGraphSink = new GraphStoreSink(fGraphStore, updateEndpoint, fRateController);
+                }
+            }
+            else if (storage.equals("nquads") || storage.equals("file")) 
+            {
+                File dumpFile = new File(getProperty(p, "dumpFile", "bootstrap.dumpFile"));
+                System.out.format("Use N-Quads dump backend:%n  dumpFile=%s ...%n", dumpFile.getAbsolutePath());
+
+                fGraphSink = new NQuadsFileSink(dumpFile);
+
+                // a dump always has to contain every part, so there is nothing to remove from it or resume
+                if (fManifestFile != null)
+                    System.out.format("  ignoring manifestFile=%s, a dump is always written from scratch%n", fManifestFile);
+                if (fJournalFile != null)
+                    System.out.format("  ignoring journalFile=%s, a dump is always written from scratch%n", fJournalFile);
+                fManifestFile = null;
+                fJournalFile = null;
+            }
+            else if (storage.equals("memory")) 
+            {
+                System.out.println("Use in-memory backend, the graphs are dropped at the end of the run ...");
+
+                fGraphSink = new InMemoryGraphSink();
+            }
+            else if (storage.equals("tdb")) 
+            {
+                File tdbDirectory = new File(getProperty(p, "tdbDirectory", "bootstrap.tdbDirectory"));
+                int tdbBatchGraphs = Integer.parseInt(getProperty(p, "tdbBatchGraphs", "bootstrap.tdbBatchGraphs"));
+                System.out.format("Use TDB backend:%n  tdbDirectory=%s%n  tdbBatchGraphs=%d ...%n", tdbDirectory.getAbsolutePath(), tdbBatchGraphs);
+
+                fGraphSink = new TdbGraphSink(tdbDirectory, tdbBatchGraphs);
             }
 
             // Overriders
@@ -147,63 +457,134 @@ public class App
             }
             System.out.format("Use LDraw parts directory: %s%n", fPartsDirectory);
         } 
+        catch (IllegalArgumentException e) 
+        {
+            throw e;
+        } 
         catch (Exception e) 
         {
             e.printStackTrace();
         }
     }
 
-    private static void initRepoModel() 
+    private static PrefixMapping createPrefixMapping() 
+    {
+        PrefixMapping prefixes = new PrefixMappingImpl() 
+        {
+            // a model merges its default prefixes into the mapping of its graph, which must not fail when there is nothing to add
+            @Override
+            public PrefixMapping withDefaultMappings(PrefixMapping other) 
+            {
+                for (Map.Entry<String, String> e : other.getNsPrefixMap().entrySet()) 
+                {
+                    if (getNsPrefixURI(e.getKey()) == null && getNsURIPrefix(e.getValue()) == null)
+                        return super.withDefaultMappings(other);
+                }
+                return this;
+            }
+        };
+        prefixes.setNsPrefixes(FOAF.NAMESPACE);
+        prefixes.setNsPrefixes(ADMS.NAMESPACE);
+        prefixes.setNsPrefixes(DCAT.NAMESPACE);
+        prefixes.setNsPrefix("dcterms", DCTerms.NS);
+        prefixes.setNsPrefix("rdf", RDF.getURI());
+        prefixes.setNsPrefix("rdfs", RDFS.getURI());
+        prefixes.setNsPrefix("skos", SKOS.getURI());
+        prefixes.setNsPrefix("xsd", XSD.NS);
+        prefixes.setNsPrefix("ldraw", "http://www.ldraw.org/ns/ldraw#");
+        prefixes.setNsPrefix("repo", Util.joinPath(fBaseURI, "repo/"));
+        prefixes.setNsPrefix("users", Util.joinPath(fBaseURI, "repo/users/"));
+        prefixes.setNsPrefix("assets", Util.joinPath(fBaseURI, "repo/assets/"));
+        prefixes.setNsPrefix("distributions", Util.joinPath(fBaseURI, "repo/distributions/"));
+
+        // shared by every graph the listeners build, so nobody may change it
+        return prefixes.lock();
+    }
+
+    /**
+     * @param create whether to create the repo graph, or only add the links 
+     *        of new assets to an existing one
+     */
+    private static void initRepoModel(boolean create) 
+    {
+        fRepo = ResourceFactory.createResource(fRepoUri);
+        fRepoLinks = createRepoLinks();
+
+        if (create)
+            fGraphSink.createNamedGraph(fRepo.getURI(), createRepoModel(new File[0]));
+    }
+
+    /**
+     * @return the description of the repo, with a link to each of the given parts
+     */
+    private static Model createRepoModel(File[] parts) 
     {
-        fRepoModel = ModelFactory.createDefaultModel();
-        fRepoModel.setNsPrefixes(FOAF.NAMESPACE);
-        fRepoModel.setNsPrefixes(ADMS.NAMESPACE);
-        fRepoModel.setNsPrefixes(DCAT.NAMESPACE);
-        fRepoModel.setNsPrefix("dcterms", DCTerms.NS);
-        fRepoModel.setNsPrefix("rdf", RDF.getURI());
-        fRepoModel.setNsPrefix("rdfs", RDFS.getURI());
-        fRepoModel.setNsPrefix("skos", SKOS.getURI());
-        fRepoModel.setNsPrefix("xsd", XSD.NS);
-        fRepoModel.setNsPrefix("ldraw", "http://www.ldraw.org/ns/ldraw#");
-        fRepoModel.setNsPrefix("repo", Util.joinPath(fBaseURI, "repo/"));
-        fRepoModel.setNsPrefix("users", Util.joinPath(fBaseURI, "repo/users/"));
-        fRepoModel.setNsPrefix("assets", Util.joinPath(fBaseURI, "repo/assets/"));
-        fRepoModel.setNsPrefix("distributions", Util.joinPath(fBaseURI, "repo/distributions/"));
-
-        fRepo = fRepoModel.createResource(Util.joinPath(fBaseURI, "repo"));
-        fRepoModel.add(fRepo, RDF.type, ADMS.AssetRepository);
-        fRepoModel.add(fRepo, DCTerms.title, "The Open Lego Parts Repository");
-        fRepoModel.add(fRepo, DCTerms.created, fRepoModel.createTypedLiteral(Calendar.getInstance().getTime(), XSDDatatype.XSDdate));
-        fRepoModel.add(fRepo, DCTerms.description, "A complete catalog of LDraw parts");
-        fRepoModel.add(fRepo, DCTerms.publisher, "resc28");
-
-        fGraphStore.createNamedGraph(fRepo.getURI(), fRepoModel);
+        Model repoModel = createRepoLinks();
+        repoModel.add(fRepo, RDF.type, ADMS.AssetRepository);
+        repoModel.add(fRepo, DCTerms.title, "The Open Lego Parts Repository");
+        repoModel.add(fRepo, DCTerms.created, repoModel.createTypedLiteral(Calendar.getInstance().getTime(), XSDDatatype.XSDdate));
+        repoModel.add(fRepo, DCTerms.description, "A complete catalog of LDraw parts");
+        repoModel.add(fRepo, DCTerms.publisher, "resc28");
+
+        for (File part : parts)
+            repoModel.add(fRepo, DCAT.dataset, repoModel.createResource(Util.joinPath(fAssetBaseUri, FilenameUtils.getBaseName(part.getName()))));
+        return repoModel;
     }
 
-    private static void parseFile(File file) throws IOException 
+    private static Model createRepoLinks() 
     {
-        if (file.isFile()) 
-        {
+        Model links = ModelFactory.createDefaultModel();
+        links.setNsPrefixes(fPrefixes);
+        return links;
+    }
 
-            // parse the .DAT file and create RDF models for asset and its .DAT distribution
-            InputStream fis = new FileInputStream(file);
-            LDrawLexer lexer = new LDrawLexer(new ANTLRInputStream(fis));
-            LDrawParser parser = new LDrawParser(new CommonTokenStream(lexer));
-            ParseTreeWalker walker = new ParseTreeWalker();
-            ParseTree tree = parser.file();
+    /**
+     * Links an asset from the repo graph. The links are written in chunks of 
+     * repoChunkLinks, each after the graphs of the assets it links to, so the 
+     * repo graph never lags far behind the assets in the store.
+     */
+    static synchronized void addToRepo(String basename) 
+    {
+        Resource asset = fRepoLinks.createResource(Util.joinPath(fAssetBaseUri, basename));
+        fRepoLinks.add(fRepo, DCAT.dataset, asset);
+
+        if (fRepoLinks.size() >= fRepoChunkLinks)
+            flushRepoLinks();
+    }
+
+    static synchronized void flushRepoLinks() 
+    {
+        if (fRepoLinks.isEmpty())
+            return;
+
+        // a sink may keep the model until its next upload, so it is not reused
+        fGraphSink.addToNamedGraph(fRepo.getURI(), fRepoLinks);
+        fRepoLinks = createRepoLinks();
+    }
 
-            walker.walk(new AssetListener(file.getName(), fGraphStore), tree);
-            walker.walk(new LdrawDistributionListener(file.getName(), fGraphStore), tree);
-//			// FIXME: create users
-//			walker.walk(new UserListener(file.getName(), fGraphStore), tree);
+    private static void removeParts(List<String> fileNames) 
+    {
+        Model links = ModelFactory.createDefaultModel();
 
-            // add asset to repo
-            Resource asset = fRepoModel.createResource(Util.joinPath(fAssetBaseUri, FilenameUtils.getBaseName(file.getName())));
-            fRepoModel.add(fRepo, DCAT.dataset, asset);
+        for (String fileName : fileNames) 
+        {
+            String basename = FilenameUtils.getBaseName(fileName);
+            System.out.format("Removing part: %s%n", fileName);
 
-            // close InputStream
-            fis.close();
+            fGraphSink.deleteNamedGraph(Util.joinPath(fAssetBaseUri, Util.urlEncoded(basename)));
+            fGraphSink.deleteNamedGraph(Util.joinPath(fDistributionBaseUri, Util.urlEncoded(basename)));
+            links.add(fRepo, DCAT.dataset, links.createResource(Util.joinPath(fAssetBaseUri, basename)));
         }
+
+        if (!links.isEmpty())
+            fGraphSink.removeFromNamedGraph(fRepo.getURI(), links);
+    }
+
+    static ParsedPart parseFile(File file, boolean replacing) throws IOException 
+    {
+        if (file.isFile()) 
+            return PartParser.forCurrentThread().parse(file, replacing);
+        return null;
     }
 
     public static String getProperty(java.util.Properties p, String key, String sysKey) 
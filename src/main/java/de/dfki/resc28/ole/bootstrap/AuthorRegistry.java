@@ -0,0 +1,125 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+
+import de.dfki.resc28.ole.bootstrap.store.GraphSink;
+import de.dfki.resc28.ole.bootstrap.vocabularies.FOAF;
+
+/**
+ * Collects the authors and contributors named in the parts, so that every
+ * user graph is built once from all parts instead of being looked up in the
+ * graph store for every row.
+ *
+ * The registry is filled by all parse workers at once. Users, their
+ * accounts and their assets are kept in sorted order, so the user graphs do
+ * not depend on the order in which the parts were parsed.
+ */
+public class AuthorRegistry
+{
+    private static final Literal LDRAW_HOMEPAGE = ResourceFactory.createTypedLiteral("http://ldraw.org/", XSDDatatype.XSDanyURI);
+
+    private static final class Author
+    {
+        final Resource user;
+        final Literal name;
+        final Set<String> usernames = new ConcurrentSkipListSet<String>();
+        final Set<String> made = new ConcurrentSkipListSet<String>();
+        final Set<String> contributed = new ConcurrentSkipListSet<String>();
+
+        Author(Resource user, Literal name)
+        {
+            this.user = user;
+            this.name = name;
+        }
+    }
+
+    private final ConcurrentMap<String, Author> authors = new ConcurrentSkipListMap<String, Author>();
+
+    /**
+     * Records the author of an asset, from an author row.
+     *
+     * @param username the LDraw.org user name, or {@code null}
+     */
+    public void made(Resource user, Literal name, String username, Resource asset)
+    {
+        author(user, name, username).made.add(asset.getURI());
+    }
+
+    /**
+     * Records a contributor to an asset, from a history row.
+     *
+     * @param username the LDraw.org user name, or {@code null}
+     */
+    public void contributed(Resource user, Literal name, String username, Resource asset)
+    {
+        author(user, name, username).contributed.add(asset.getURI());
+    }
+
+    public int size()
+    {
+        return authors.size();
+    }
+
+    /**
+     * Adds a graph for every user to the sink, in the order of their IRIs.
+     *
+     * Each LDraw.org account of a user is named after the user, so that
+     * adding the graph of a user once more does not add another account.
+     */
+    public void writeTo(GraphSink sink)
+    {
+        for (Author author : authors.values())
+        {
+            TripleBuffer graph = new TripleBuffer(App.fPrefixes);
+            graph.add( author.user, RDF.type, FOAF.Agent );
+            graph.add( author.user, FOAF.name, author.name );
+
+            for (String username : author.usernames)
+            {
+                Resource account = ResourceFactory.createResource(author.user.getURI() + "#" + Util.urlEncoded(username));
+                graph.add( account, RDF.type, FOAF.OnlineAccount );
+                graph.add( account, FOAF.accountServiceHomepage, LDRAW_HOMEPAGE );
+                graph.add( account, FOAF.accountName, username );
+                graph.add( author.user, FOAF.account, account );
+            }
+
+            for (String asset : author.made)
+                graph.add( author.user, FOAF.made, ResourceFactory.createResource(asset) );
+            for (String asset : author.contributed)
+                graph.add( author.user, DCTerms.contributor, ResourceFactory.createResource(asset) );
+
+            sink.addToNamedGraph(author.user.getURI(), graph.asModel());
+        }
+    }
+
+    private Author author(Resource user, Literal name, String username)
+    {
+        Author author = authors.get(user.getURI());
+        if (author == null)
+        {
+            Author created = new Author(user, name);
+            author = authors.putIfAbsent(user.getURI(), created);
+            if (author == null)
+                author = created;
+        }
+
+        if (username != null)
+            author.usernames.add(username);
+        return author;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a library of synthetic parts, e.g. to see how the bootstrapper
+ * copes with many times the parts of the LDraw library, without a network.
+ *
+ * Every part has the header rows the listeners read (title, name, author,
+ * part type, license, and at random help, category, keywords, history and
+ * comment rows), references to primitives and to parts generated before it,
+ * so the references form a graph without cycles, and a number of geometry
+ * rows drawn from a weighted mix of sizes.
+ *
+ * Each part only depends on the seed and its number, so the same seed
+ * always yields the same library, however many threads write it.
+ */
+public class CorpusGenerator
+{
+    private static final String CRLF = "\r\n";
+
+    private static final String[] FIRST_NAMES = { "Anna", "Bert", "Chris", "Dana", "Erik", "Fiona", "Georg", "Hanna", "Ivan", "Jana",
+            "Kurt", "Lena", "Marco", "Nina", "Oskar", "Paula", "Rainer", "Sofia", "Tom", "Ute", "Viktor", "Wanda" };
+    private static final String[] LAST_NAMES = { "Adler", "Becker", "Conrad", "Dietz", "Engel", "Fischer", "Graf", "Hahn", "Jansen",
+            "Keller", "Lorenz", "Maier", "Neumann", "Otto", "Peters", "Richter", "Schubert", "Thiel", "Vogel", "Weber", "Zimmer" };
+    private static final String[] CATEGORIES = { "Brick", "Plate", "Tile", "Slope", "Technic", "Minifig", "Panel", "Wedge",
+            "Cylinder", "Hinge", "Bracket", "Wheel" };
+    private static final String[] FEATURES = { "with Studs", "with Hole", "with Groove", "with Pin", "with Clip", "with Bar",
+            "with Pattern", "Round", "Curved", "Inverted" };
+    private static final String[] KEYWORDS = { "axle", "bar", "clip", "corner", "curved", "door", "frame", "grille", "hinge",
+            "hole", "pattern", "pin", "round", "sticker", "stud", "window" };
+    private static final String[] PART_TYPES = { "Part", "Part", "Part", "Part", "Part", "Subpart", "Shortcut" };
+    private static final String[] PRIMITIVES = { "stud.dat", "stud2.dat", "stud3.dat", "stud4.dat", "box5.dat", "4-4edge.dat",
+            "4-4cyli.dat", "4-4disc.dat", "4-4ring3.dat", "2-4edge.dat", "1-4cyli.dat", "rect.dat", "rect2p.dat", "axle.dat",
+            "peghole.dat", "connect.dat" };
+
+    private final long seed;
+    private final int authors;
+    private final double subparts;
+    private final double primitives;
+    private final int[] geometryRows;
+    private final double[] geometryWeights;
+
+    /**
+     * @param authors the number of distinct authors to draw from
+     * @param subparts the mean number of references to other generated parts
+     * @param primitives the mean number of references to primitives
+     * @param geometryMix geometry rows per part and their weights, e.g.
+     *        {@code 8:0.5,64:0.35,512:0.14,8192:0.01}
+     */
+    public CorpusGenerator(long seed, int authors, double subparts, double primitives, String geometryMix)
+    {
+        this.seed = seed;
+        this.authors = Math.max(1, authors);
+        this.subparts = subparts;
+        this.primitives = primitives;
+
+        String[] entries = geometryMix.split(",");
+        this.geometryRows = new int[entries.length];
+        this.geometryWeights = new double[entries.length];
+        double total = 0;
+        for (int i = 0; i < entries.length; i++)
+        {
+            String[] entry = entries[i].trim().split(":");
+            if (entry.length != 2)
+                throw new IllegalArgumentException("Not a geometry mix entry (rows:weight): " + entries[i]);
+            geometryRows[i] = Integer.parseInt(entry[0].trim());
+            total += Double.parseDouble(entry[1].trim());
+            geometryWeights[i] = total;
+        }
+        for (int i = 0; i < entries.length; i++)
+            geometryWeights[i] /= total;
+    }
+
+    /**
+     * @return the file name of the given part
+     */
+    public static String fileName(int part)
+    {
+        return String.format(Locale.ROOT, "x%07d.dat", part);
+    }
+
+    /**
+     * Writes the parts {@code 0} to {@code parts - 1} into the directory,
+     * overwriting any of them that exist.
+     */
+    public void generate(final File directory, final int parts, int threads) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads; i++)
+            {
+                results.add(writers.submit(new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        for (int part = next.getAndIncrement(); part < parts; part = next.getAndIncrement())
+                        {
+                            write(directory, part);
+                            if ((part + 1) % 10000 == 0)
+                                System.out.format("Generated %d/%d parts%n", part + 1, parts);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> result : results)
+                result.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating parts", e);
+        }
+        finally
+        {
+            writers.shutdownNow();
+        }
+    }
+
+    private void write(File directory, int part) throws IOException
+    {
+        Writer out = Files.newBufferedWriter(new File(directory, fileName(part)).toPath(), StandardCharsets.UTF_8);
+        try
+        {
+            write(out, part, new Random(seed * 0x9E3779B97F4A7C15L + part));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void write(Writer out, int part, Random random) throws IOException
+    {
+        String category = pick(random, CATEGORIES);
+        String type = pick(random, PART_TYPES);
+        int author = random.nextInt(authors);
+
+        out.write(String.format(Locale.ROOT, "0 %s%s %d x %d %s%s", type.equals("Subpart") ? "~" : "", category,
+                1 + random.nextInt(4), 1 + random.nextInt(8), pick(random, FEATURES), CRLF));
+        out.write("0 Name: " + fileName(part) + CRLF);
+        out.write("0 Author: " + realName(author) + " [" + userName(author) + "]" + CRLF);
+        out.write(String.format(Locale.ROOT, "0 !LDRAW_ORG %s UPDATE %d-%02d%s", type, 1997 + random.nextInt(20), 1 + random.nextInt(4), CRLF));
+        out.write("0 !LICENSE Redistributable under CCAL version 2.0 : see CAreadme.txt" + CRLF);
+        out.write(CRLF);
+
+        if (random.nextInt(10) == 0)
+            out.write("0 !HELP Use with the " + pick(random, CATEGORIES) + " of the same set" + CRLF);
+        out.write("0 BFC CERTIFY CCW" + CRLF);
+        out.write(CRLF);
+
+        boolean meta = false;
+        if (random.nextInt(3) == 0)
+        {
+            out.write("0 !CATEGORY " + category + CRLF);
+            meta = true;
+        }
+        if (random.nextInt(2) == 0)
+        {
+            out.write("0 !KEYWORDS " + pick(random, KEYWORDS) + ", " + pick(random, KEYWORDS) + ", " + pick(random, KEYWORDS) + CRLF);
+            meta = true;
+        }
+
+        int history = random.nextInt(5);
+        if (history > 0 && meta)
+            out.write(CRLF);
+        for (int i = 0; i < history; i++)
+        {
+            int editor = random.nextInt(authors);
+            out.write(String.format(Locale.ROOT, "0 !HISTORY %d-%02d-%02d [%s] %s%s", 1997 + random.nextInt(20), 1 + random.nextInt(12),
+                    1 + random.nextInt(28), userName(editor), pick(random, new String[] { "Created", "BFC Certification", "Moved to subpart", "Official Update" }), CRLF));
+        }
+        if (random.nextInt(4) == 0)
+            out.write("0 // " + pick(random, FEATURES) + " is approximated" + CRLF);
+        out.write(CRLF);
+
+        int primitiveReferences = poisson(random, primitives);
+        for (int i = 0; i < primitiveReferences; i++)
+            writeReference(out, random, pick(random, PRIMITIVES));
+
+        int subpartReferences = part > 0 ? poisson(random, subparts) : 0;
+        for (int i = 0; i < subpartReferences; i++)
+            writeReference(out, random, fileName(random.nextInt(part)));
+
+        int rows = geometryRows(random);
+        for (int i = 0; i < rows; i++)
+            writeGeometry(out, random);
+
+        out.write("0" + CRLF);
+    }
+
+    private static void writeReference(Writer out, Random random, String fileName) throws IOException
+    {
+        StringBuilder row = new StringBuilder("1 16");
+        for (int i = 0; i < 3; i++)
+            appendCoordinate(row, random);
+        out.write(row.append(" 1 0 0 0 1 0 0 0 1 ").append(fileName).append(CRLF).toString());
+    }
+
+    // lines, triangles, quads and optional lines in the ratio of real parts
+    private static void writeGeometry(Writer out, Random random) throws IOException
+    {
+        int kind = random.nextInt(10);
+        int lineType = kind < 2 ? 2 : kind < 6 ? 3 : kind < 9 ? 4 : 5;
+        int points = lineType == 2 ? 2 : lineType == 3 ? 3 : 4;
+
+        StringBuilder row = new StringBuilder().append(lineType).append(lineType == 2 || lineType == 5 ? " 24" : " 16");
+        for (int i = 0; i < 3 * points; i++)
+            appendCoordinate(row, random);
+        out.write(row.append(CRLF).toString());
+    }
+
+    private int geometryRows(Random random)
+    {
+        double x = random.nextDouble();
+        for (int i = 0; i < geometryWeights.length; i++)
+        {
+            if (x < geometryWeights[i])
+                return geometryRows[i];
+        }
+        return geometryRows[geometryRows.length - 1];
+    }
+
+    private static String realName(int author)
+    {
+        return FIRST_NAMES[author % FIRST_NAMES.length] + " " + LAST_NAMES[(author / FIRST_NAMES.length) % LAST_NAMES.length]
+                + (author < FIRST_NAMES.length * LAST_NAMES.length ? "" : " " + toLetters(author / (FIRST_NAMES.length * LAST_NAMES.length)));
+    }
+
+    private static String userName(int author)
+    {
+        return FIRST_NAMES[author % FIRST_NAMES.length].toLowerCase(Locale.ROOT) + author;
+    }
+
+    // a suffix of letters only, as names have no digits
+    private static String toLetters(int n)
+    {
+        StringBuilder letters = new StringBuilder();
+        do
+        {
+            letters.append((char) ('A' + n % 26));
+            n /= 26;
+        }
+        while (n > 0);
+        return letters.toString();
+    }
+
+    // -80.00 to 80.00, written by hand as formatting is the bulk of the work
+    private static void appendCoordinate(StringBuilder row, Random random)
+    {
+        int hundredths = random.nextInt(16001) - 8000;
+        row.append(hundredths < 0 ? " -" : " ");
+        hundredths = Math.abs(hundredths);
+        row.append(hundredths / 100).append(hundredths % 100 < 10 ? ".0" : ".").append(hundredths % 100);
+    }
+
+    private static String pick(Random random, String[] values)
+    {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static int poisson(Random random, double mean)
+    {
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int n = 0;
+        while (product > limit)
+        {
+            product *= random.nextDouble();
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+
+import de.dfki.resc28.ole.bootstrap.store.GraphSink;
+
+/**
+ * Restores the named graphs of an N-Quads dump, such as the one written by
+ * the {@code nquads} backend, into a graph sink.
+ *
+ * The dump is decompressed and parsed as a stream; consecutive quads of the
+ * same graph are grouped into one graph, and the graphs into batches. The
+ * batches are handed to a single writer thread, which owns the sink, while
+ * the next batches are parsed; the bounded hand-off keeps only a few
+ * batches in memory. A sink that uploads in parallel does so on its own.
+ *
+ * The writer only flushes the sink at checkpoints, every
+ * {@code checkpointGraphs} graphs rounded up to whole batches, since a flush
+ * waits for every upload in flight. How many uploads overlap is therefore
+ * up to the sink: a sink that writes every graph as it gets it, such as the
+ * TDB sink or a store sink without batching, overlaps nothing but parsing
+ * with its writes.
+ *
+ * The number of graphs that are known to be in the store is kept in a
+ * progress file, which is updated at every checkpoint, so an interrupted
+ * restore resumes where it stopped. The sink may have written some graphs
+ * after the last checkpoint, so on resuming, the graphs up to the next
+ * checkpoint replace what the store holds of them, unless an earlier part
+ * of the dump has added to the same graph already. The graphs after that
+ * cannot be in the store and are simply added.
+ */
+public class DumpRestore
+{
+    private static final int REPORT_INTERVAL = 1000;
+
+    // parsed batches that may wait for the writer, enough to parse the next one while one is written
+    private static final int PENDING_BATCHES = 2;
+
+    private static final Batch END_OF_DUMP = new Batch(-1);
+
+    private static final class Batch
+    {
+        final long start;
+        final List<String> graphURIs = new ArrayList<String>();
+        final List<Model> graphs = new ArrayList<Model>();
+        final List<Boolean> replacing = new ArrayList<Boolean>();
+
+        Batch(long start)
+        {
+            this.start = start;
+        }
+    }
+
+    private final GraphSink sink;
+    private final BlockingQueue<Batch> handOff = new ArrayBlockingQueue<Batch>(PENDING_BATCHES);
+    private final int batchGraphs;
+    private final int checkpointBatches;
+    private final File progressFile;
+
+    private volatile RuntimeException failure = null;
+    private long restoredGraphs;
+    private long restoredQuads = 0;
+    private long nextReport;
+    private long startTime;
+
+    /**
+     * @param batchGraphs graphs handed to the writer at a time
+     * @param checkpointGraphs graphs written between two flushes of the sink
+     *        and updates of the progress file
+     */
+    public DumpRestore(GraphSink sink, int batchGraphs, int checkpointGraphs, File progressFile)
+    {
+        this.sink = sink;
+        this.batchGraphs = Math.max(1, batchGraphs);
+        this.checkpointBatches = Math.max(1, (checkpointGraphs + this.batchGraphs - 1) / this.batchGraphs);
+        this.progressFile = progressFile;
+    }
+
+    public void run(File dump) throws IOException
+    {
+        final boolean resuming = progressFile.isFile();
+        final long resumeFrom = readProgress();
+        // only the graphs up to the checkpoint the restore stopped before may have been written
+        final long replaceUpTo = resuming ? resumeFrom + (long) checkpointBatches * batchGraphs : 0;
+        if (resuming)
+            System.out.format("Resuming restore of %s after %d graphs ...%n", dump, resumeFrom);
+        else
+            System.out.format("Restoring %s ...%n", dump);
+
+        // from now on the store may hold graphs of this dump
+        writeProgress(resumeFrom);
+
+        restoredGraphs = resumeFrom;
+        nextReport = resumeFrom + REPORT_INTERVAL;
+        startTime = System.nanoTime();
+
+        Thread writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                write();
+            }
+        }, "graph-restorer");
+        writer.start();
+
+        InputStream in = new BufferedInputStream(new FileInputStream(dump), 1 << 16);
+        try
+        {
+            if (dump.getName().endsWith(".gz"))
+                in = new GZIPInputStream(in, 1 << 16);
+
+            RDFDataMgr.parse(new StreamRDFBase()
+            {
+                private final Set<String> seen = new HashSet<String>();
+                private long graphIndex = 0;
+                private Node current = null;
+                private Model graph = null;
+                private Batch batch = null;
+
+                @Override
+                public void quad(Quad quad)
+                {
+                    // a dump of named graphs has no default graph
+                    if (quad.isDefaultGraph())
+                        return;
+
+                    if (!quad.getGraph().equals(current))
+                    {
+                        endGraph();
+                        current = quad.getGraph();
+                        graph = ModelFactory.createDefaultModel();
+                    }
+                    graph.getGraph().add(quad.asTriple());
+                }
+
+                @Override
+                public void finish()
+                {
+                    endGraph();
+                    submit();
+                }
+
+                private void endGraph()
+                {
+                    if (current == null)
+                        return;
+
+                    // the graphs before the resume point are in the store already
+                    String graphURI = current.getURI();
+                    boolean replacing = graphIndex < replaceUpTo && seen.add(graphURI);
+                    if (graphIndex++ >= resumeFrom)
+                    {
+                        if (batch == null)
+                            batch = new Batch(graphIndex - 1);
+                        batch.graphURIs.add(graphURI);
+                        batch.graphs.add(graph);
+                        batch.replacing.add(replacing);
+                        if (batch.graphs.size() >= batchGraphs)
+                            submit();
+                    }
+                    current = null;
+                    graph = null;
+                }
+
+                private void submit()
+                {
+                    if (failure != null)
+                        throw failure;
+                    if (batch == null)
+                        return;
+
+                    hand(batch);
+                    batch = null;
+                }
+
+                @Override
+                public void triple(Triple triple)
+                {
+                    // a dump of named graphs has no default graph
+                }
+            }, in, Lang.NQUADS);
+        }
+        catch (RuntimeException e)
+        {
+            // a failure of the writer stops the parser and is reported below
+            if (e != failure)
+                throw e;
+        }
+        finally
+        {
+            in.close();
+            hand(END_OF_DUMP);
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failure != null)
+            throw new IOException(String.format("Restore failed after %d graphs, run it again to resume", restoredGraphs), failure);
+
+        report();
+        Files.deleteIfExists(progressFile.toPath());
+    }
+
+    private void hand(Batch batch)
+    {
+        try
+        {
+            handOff.put(batch);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the restore writer", e);
+        }
+    }
+
+    private void write()
+    {
+        int unflushedBatches = 0;
+        long unflushedQuads = 0;
+        long end = -1;
+
+        try
+        {
+            for (Batch batch = handOff.take(); batch != END_OF_DUMP; batch = handOff.take())
+            {
+                // keep draining after a failure, so that the parser never blocks on a full queue
+                if (failure != null)
+                    continue;
+
+                try
+                {
+                    for (int i = 0; i < batch.graphs.size(); i++)
+                    {
+                        if (batch.replacing.get(i))
+                            sink.replaceNamedGraph(batch.graphURIs.get(i), batch.graphs.get(i));
+                        else
+                            sink.addToNamedGraph(batch.graphURIs.get(i), batch.graphs.get(i));
+                        unflushedQuads += batch.graphs.get(i).size();
+                    }
+                    end = batch.start + batch.graphs.size();
+
+                    if (++unflushedBatches >= checkpointBatches)
+                    {
+                        sink.flush();
+                        completed(end, unflushedQuads);
+                        unflushedBatches = 0;
+                        unflushedQuads = 0;
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    failure = e;
+                }
+            }
+
+            if (failure == null && unflushedBatches > 0)
+            {
+                sink.flush();
+                completed(end, unflushedQuads);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            failure = new IllegalStateException("Interrupted while restoring graphs", e);
+        }
+        catch (RuntimeException e)
+        {
+            failure = e;
+        }
+    }
+
+    private void completed(long end, long quads)
+    {
+        restoredGraphs = end;
+        restoredQuads += quads;
+
+        try
+        {
+            writeProgress(restoredGraphs);
+        }
+        catch (IOException e)
+        {
+            System.err.format("Could not record restore progress in %s: %s%n", progressFile, e.getMessage());
+        }
+
+        if (restoredGraphs >= nextReport)
+        {
+            report();
+            nextReport = restoredGraphs + REPORT_INTERVAL;
+        }
+    }
+
+    private void report()
+    {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.format("Restored %d graphs, %d quads this run (%.1f quads/s)%n", restoredGraphs, restoredQuads, seconds > 0 ? restoredQuads / seconds : 0.0);
+    }
+
+    private long readProgress() throws IOException
+    {
+        if (!progressFile.isFile())
+            return 0;
+        return Long.parseLong(new String(Files.readAllBytes(progressFile.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    private void writeProgress(long graphs) throws IOException
+    {
+        File tmp = new File(progressFile.getPath() + ".tmp");
+        Files.write(tmp.toPath(), Long.toString(graphs).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
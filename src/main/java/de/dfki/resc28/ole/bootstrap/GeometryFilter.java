@@ -0,0 +1,148 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Removes the geometry rows of an LDraw file before it is lexed.
+ *
+ * Lines, triangles, quadrilaterals and optional lines (line types 2 to 5)
+ * make up the bulk of large parts, but no listener looks at them, so they
+ * are dropped together with their line terminator. Meta and comment rows
+ * (type 0) and sub-file references (type 1) are passed on exactly as they
+ * are.
+ *
+ * Used as a reader, only a single line is held at a time; a file that has
+ * been read as a whole can be filtered in place with {@link #strip}.
+ */
+final class GeometryFilter extends Reader
+{
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int bufferLength = 0;
+    private int bufferPos = 0;
+
+    private char[] line = new char[256];
+    private int lineLength = 0;
+    private int linePos = 0;
+
+    GeometryFilter(Reader in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Moves the rows that are kept to the front of the array.
+     *
+     * @return the number of characters that are kept
+     */
+    static int strip(char[] data, int length)
+    {
+        int kept = 0;
+        int lineStart = 0;
+
+        while (lineStart < length)
+        {
+            int lineEnd = lineStart;
+            while (lineEnd < length && data[lineEnd] != '\n')
+                lineEnd++;
+            if (lineEnd < length)
+                lineEnd++;
+
+            if (!isGeometryRow(data, lineStart, lineEnd))
+            {
+                System.arraycopy(data, lineStart, data, kept, lineEnd - lineStart);
+                kept += lineEnd - lineStart;
+            }
+            lineStart = lineEnd;
+        }
+        return kept;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if (linePos == lineLength && !nextLine())
+            return -1;
+
+        int n = Math.min(len, lineLength - linePos);
+        System.arraycopy(line, linePos, cbuf, off, n);
+        linePos += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (linePos == lineLength && !nextLine())
+            return -1;
+        return line[linePos++];
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Reads the next row that is kept, including its line terminator.
+     *
+     * @return {@code false} at the end of the input
+     */
+    private boolean nextLine() throws IOException
+    {
+        do
+        {
+            lineLength = 0;
+            linePos = 0;
+
+            while (true)
+            {
+                if (bufferPos == bufferLength)
+                {
+                    bufferLength = in.read(buffer, 0, buffer.length);
+                    bufferPos = 0;
+                    if (bufferLength <= 0)
+                    {
+                        bufferLength = 0;
+                        break;
+                    }
+                }
+
+                char c = buffer[bufferPos++];
+                if (lineLength == line.length)
+                    line = Arrays.copyOf(line, 2 * line.length);
+                line[lineLength++] = c;
+                if (c == '\n')
+                    break;
+            }
+
+            if (lineLength == 0)
+                return false;
+        }
+        while (isGeometryRow(line, 0, lineLength));
+
+        return true;
+    }
+
+    private static boolean isGeometryRow(char[] data, int start, int end)
+    {
+        int i = start;
+        while (i < end && (data[i] == ' ' || data[i] == '\t'))
+            i++;
+
+        // the line type is a single digit followed by white space
+        if (i + 1 >= end || data[i] < '2' || data[i] > '5')
+            return false;
+        return Character.isWhitespace(data[i + 1]);
+    }
+}
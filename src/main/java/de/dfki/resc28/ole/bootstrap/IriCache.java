@@ -0,0 +1,127 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+
+/**
+ * Interns the resources that many parts refer to: the assets of referenced
+ * sub-files (every part refers to {@code stud.dat} and friends), the users
+ * named in author and history rows, and the LDraw part types.
+ *
+ * The resources are built exactly as the listeners used to build them, but
+ * only once per name. The cache is shared by all parse workers; each of its
+ * maps is cleared when it grows beyond the given number of entries, so the
+ * names in use at the time are quickly cached again.
+ */
+public class IriCache
+{
+    private static final String LDRAW_TYPE_NS = "http://www.ldraw.org/ns/ldraw#";
+
+    private final String assetBaseUri;
+    private final String userBaseUri;
+    private final int maxEntries;
+
+    private final ConcurrentMap<String, Resource> assets = new ConcurrentHashMap<String, Resource>();
+    private final ConcurrentMap<String, Resource> users = new ConcurrentHashMap<String, Resource>();
+    private final ConcurrentMap<String, Resource> types = new ConcurrentHashMap<String, Resource>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public IriCache(String assetBaseUri, String userBaseUri, int maxEntries)
+    {
+        this.assetBaseUri = assetBaseUri;
+        this.userBaseUri = userBaseUri;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param fileName the file name of a referenced part, e.g. {@code s\stud.dat}
+     */
+    public Resource asset(String fileName)
+    {
+        Resource asset = lookup(assets, fileName);
+        if (asset == null)
+        {
+            asset = ResourceFactory.createResource(Util.joinPath(assetBaseUri, Util.urlEncoded(FilenameUtils.getBaseName(fileName))));
+            store(assets, fileName, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * @param realname the words of a user's real name
+     */
+    public Resource user(List<TerminalNode> realname)
+    {
+        String name = StringUtils.join(realname.toArray(), "_");
+        Resource user = lookup(users, name);
+        if (user == null)
+        {
+            user = ResourceFactory.createResource(Util.joinPath(userBaseUri, Util.urlEncoded(name)));
+            store(users, name, user);
+        }
+        return user;
+    }
+
+    /**
+     * @param type the type of a {@code !LDRAW_ORG} row, e.g. {@code Part}
+     */
+    public Resource ldrawType(String type)
+    {
+        Resource resource = lookup(types, type);
+        if (resource == null)
+        {
+            resource = ResourceFactory.createResource(LDRAW_TYPE_NS + Util.urlEncoded(type));
+            store(types, type, resource);
+        }
+        return resource;
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public String report()
+    {
+        long h = hits.sum();
+        long m = misses.sum();
+        return String.format("%d hits, %d misses (%.1f%% hit rate)", h, m, h + m > 0 ? 100.0 * h / (h + m) : 0.0);
+    }
+
+    private Resource lookup(ConcurrentMap<String, Resource> cache, String key)
+    {
+        Resource resource = cache.get(key);
+        if (resource != null)
+            hits.increment();
+        else
+            misses.increment();
+        return resource;
+    }
+
+    private void store(ConcurrentMap<String, Resource> cache, String key, Resource resource)
+    {
+        if (cache.size() >= maxEntries)
+            cache.clear();
+        cache.put(key, resource);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import de.dfki.resc28.ole.bootstrap.metrics.BootstrapMetrics;
+import de.dfki.resc28.ole.bootstrap.store.GraphSink;
+
+/**
+ * Parses part files on a pool of worker threads and hands the resulting
+ * graphs to a single writer thread.
+ *
+ * The hand-off queue holds the pending parse results in the order the files
+ * were submitted and is bounded, so the workers can never run further ahead
+ * of the writer than its capacity. Since the writer drains the queue in
+ * submission order, the graphs reach the sink in the same order regardless
+ * of the number of workers.
+ *
+ * With a progress journal, the writer flushes the sink every few parts and
+ * then commits the parts written so far to the journal.
+ */
+public class ParsePipeline
+{
+    private static final Future<ParsedPart> END_OF_PARTS = new FutureTask<ParsedPart>(new Callable<ParsedPart>()
+    {
+        public ParsedPart call()
+        {
+            return null;
+        }
+    });
+
+    private final int threads;
+    private final BlockingQueue<Future<ParsedPart>> handOff;
+    private final GraphSink sink;
+
+    private boolean verbose = true;
+    private ProgressJournal journal = null;
+    private int checkpointParts = Integer.MAX_VALUE;
+    private Set<File> linked;
+    private Set<File> committed;
+
+    private volatile Throwable failure = null;
+
+    public ParsePipeline(int threads, int capacity, GraphSink sink)
+    {
+        this.threads = threads;
+        this.handOff = new ArrayBlockingQueue<Future<ParsedPart>>(capacity);
+        this.sink = sink;
+    }
+
+    /**
+     * @param verbose whether to print a line for every part, e.g. when no
+     *        progress is reported periodically
+     */
+    public void setVerbose(boolean verbose)
+    {
+        this.verbose = verbose;
+    }
+
+    /**
+     * @param checkpointParts the number of parts written between two commits
+     *        of the journal
+     */
+    public void setJournal(ProgressJournal journal, int checkpointParts)
+    {
+        this.journal = journal;
+        this.checkpointParts = checkpointParts;
+    }
+
+    /**
+     * @param replaced the files whose graphs replace those already in the store
+     * @param linked the files whose assets the repo graph links to already
+     * @param committed the files whose graphs an interrupted bootstrap has
+     *        written already; they are parsed, but not written again
+     */
+    public void run(File[] files, final Set<File> replaced, Set<File> linked, Set<File> committed) throws IOException
+    {
+        this.linked = linked;
+        this.committed = committed;
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Thread writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                write();
+            }
+        }, "graph-writer");
+        writer.start();
+
+        try
+        {
+            int fileCounter = 0;
+
+            for (final File file : files)
+            {
+                if (failure != null)
+                    break;
+
+                if (verbose)
+                    System.out.format("Parsing file: %s [%d/%d]...%n", file.getAbsolutePath(), fileCounter + 1, files.length);
+
+                handOff.put(workers.submit(new Callable<ParsedPart>()
+                {
+                    public ParsedPart call() throws IOException
+                    {
+                        return App.parseFile(file, replaced.contains(file));
+                    }
+                }));
+
+                fileCounter++;
+            }
+
+            handOff.put(END_OF_PARTS);
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing parts", e);
+        }
+        finally
+        {
+            workers.shutdownNow();
+        }
+
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure != null)
+            throw new IOException(failure);
+    }
+
+    private void write()
+    {
+        int uncommitted = 0;
+        try
+        {
+            for (Future<ParsedPart> result = handOff.take(); result != END_OF_PARTS; result = handOff.take())
+            {
+                // keep draining after a failure, so that the producer never blocks on a full queue
+                if (failure != null)
+                {
+                    result.cancel(true);
+                    continue;
+                }
+
+                try
+                {
+                    ParsedPart part = result.get();
+                    if (part != null && !committed.contains(part.getFile()))
+                    {
+                        long start = System.nanoTime();
+                        part.writeTo(sink);
+                        BootstrapMetrics.get().record("write", start);
+                        BootstrapMetrics.get().written(part.size());
+
+                        // add asset to repo, unless it is in there already
+                        if (!linked.contains(part.getFile()))
+                            App.addToRepo(part.getBaseName());
+
+                        if (journal != null)
+                        {
+                            journal.record(part.getFileName());
+                            if (++uncommitted >= checkpointParts)
+                            {
+                                checkpoint();
+                                uncommitted = 0;
+                            }
+                        }
+                    }
+                }
+                catch (ExecutionException e)
+                {
+                    failure = e.getCause();
+                }
+                catch (RuntimeException e)
+                {
+                    failure = e;
+                }
+                catch (IOException e)
+                {
+                    failure = e;
+                }
+            }
+
+            if (journal != null && failure == null)
+                checkpoint();
+        }
+        catch (InterruptedException e)
+        {
+            failure = e;
+        }
+        catch (IOException e)
+        {
+            failure = e;
+        }
+    }
+
+    /**
+     * Only commits the parts to the journal once the sink has written them,
+     * along with the pending links to their assets.
+     */
+    private void checkpoint() throws IOException
+    {
+        App.flushRepoLinks();
+        sink.flush();
+        journal.commit();
+    }
+}
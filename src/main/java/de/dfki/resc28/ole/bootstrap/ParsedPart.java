@@ -0,0 +1,127 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+
+import de.dfki.resc28.ole.bootstrap.store.GraphCollector;
+import de.dfki.resc28.ole.bootstrap.store.GraphSink;
+
+/**
+ * Collects the named graphs the listeners produce for a single part file,
+ * so that a parse worker can hand them to the graph store writer at once.
+ * 
+ * The asset and distribution resources of the part are built once here and
+ * shared by all listeners walking its parse tree.
+ */
+public class ParsedPart implements GraphCollector
+{
+    private final File file;
+    private final String basename;
+    private final Resource asset;
+    private final Resource distribution;
+    private final Literal downloadURL;
+    private final boolean replacing;
+    private final Map<String, Model> graphs = new LinkedHashMap<String, Model>();
+
+    /**
+     * @param replacing whether the graphs of this part replace those of an
+     *        earlier bootstrap, rather than being added to the store
+     */
+    public ParsedPart(File file, boolean replacing)
+    {
+        this.file = file;
+        this.replacing = replacing;
+        this.basename = FilenameUtils.getBaseName(file.getName());
+        this.asset = ResourceFactory.createResource(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(basename)));
+        this.distribution = ResourceFactory.createResource(Util.joinPath(App.fDistributionBaseUri, Util.urlEncoded(basename)));
+        this.downloadURL = ResourceFactory.createTypedLiteral(Util.joinPath(App.fStorageURI, Util.urlEncoded(file.getName())), XSDDatatype.XSDanyURI);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public String getFileName()
+    {
+        return file.getName();
+    }
+
+    public String getBaseName()
+    {
+        return basename;
+    }
+
+    public Resource getAsset()
+    {
+        return asset;
+    }
+
+    public Resource getDistribution()
+    {
+        return distribution;
+    }
+
+    public Literal getDownloadURL()
+    {
+        return downloadURL;
+    }
+
+    public boolean isReplacing()
+    {
+        return replacing;
+    }
+
+    @Override
+    public void addToNamedGraph(String graphURI, Model model)
+    {
+        Model graph = graphs.get(graphURI);
+        if (graph == null)
+        {
+            graphs.put(graphURI, model);
+        }
+        else
+        {
+            graph.add(model);
+        }
+    }
+
+    /**
+     * @return the number of triples in all collected graphs
+     */
+    public long size()
+    {
+        long size = 0;
+        for (Model graph : graphs.values())
+            size += graph.size();
+        return size;
+    }
+
+    /**
+     * Writes the collected graphs to the given sink, in the order the
+     * listeners produced them.
+     */
+    public void writeTo(GraphSink sink)
+    {
+        for (Map.Entry<String, Model> graph : graphs.entrySet())
+        {
+            if (replacing)
+                sink.replaceNamedGraph(graph.getKey(), graph.getValue());
+            else
+                sink.addToNamedGraph(graph.getKey(), graph.getValue());
+        }
+    }
+}
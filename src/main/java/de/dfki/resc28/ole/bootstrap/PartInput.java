@@ -0,0 +1,143 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads part files into a character array that is reused from file to file.
+ *
+ * Small files are read through a direct buffer that is also reused, large
+ * files are mapped into memory. Either way the bytes are decoded with the
+ * given charset straight into the character array, which is then handed to
+ * the lexer without another copy. Malformed input is replaced, as a reader
+ * would do.
+ *
+ * The character array grows with the largest file read, but once a file
+ * larger than the map threshold has been handled, {@link #release()} drops
+ * its array again, so that a few huge parts do not keep their memory for the
+ * rest of the run.
+ *
+ * An instance holds the contents of the last file read and must only be
+ * used by a single thread.
+ */
+class PartInput
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final CharsetDecoder decoder;
+    private final long mapThreshold;
+    private final int retainedChars;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private char[] chars = new char[BUFFER_SIZE];
+    private CharBuffer out;
+
+    /**
+     * @param mapThreshold size in bytes above which files are mapped
+     */
+    PartInput(Charset charset, long mapThreshold)
+    {
+        this.decoder = newDecoder(charset);
+        this.mapThreshold = mapThreshold;
+        this.retainedChars = (int) Math.max(BUFFER_SIZE, Math.min(mapThreshold, Integer.MAX_VALUE - 8));
+    }
+
+    static CharsetDecoder newDecoder(Charset charset)
+    {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Reads and decodes the whole file.
+     *
+     * @return the number of characters read, see {@link #chars()}
+     */
+    int read(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        if (size > chars.length)
+            chars = new char[(int) Math.min(size, Integer.MAX_VALUE - 8)];
+
+        decoder.reset();
+        out = CharBuffer.wrap(chars);
+
+        if (size > mapThreshold)
+        {
+            decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), true);
+        }
+        else
+        {
+            buffer.clear();
+            while (channel.read(buffer) != -1)
+            {
+                buffer.flip();
+                decode(buffer, false);
+                buffer.compact();
+            }
+            buffer.flip();
+            decode(buffer, true);
+        }
+
+        while (decoder.flush(out).isOverflow())
+            grow();
+
+        return out.position();
+    }
+
+    /**
+     * @return the characters of the last file read, valid until the next
+     *         file is read or the input is released
+     */
+    char[] chars()
+    {
+        return chars;
+    }
+
+    /**
+     * Lets go of the characters of the last file read, and of their array if
+     * it is larger than the map threshold.
+     */
+    void release()
+    {
+        out = null;
+        if (chars.length > retainedChars)
+            chars = new char[BUFFER_SIZE];
+    }
+
+    private void decode(ByteBuffer in, boolean endOfInput) throws CharacterCodingException
+    {
+        while (true)
+        {
+            CoderResult result = decoder.decode(in, out, endOfInput);
+            if (result.isOverflow())
+                grow();
+            else if (result.isError())
+                result.throwException();
+            else
+                return;
+        }
+    }
+
+    private void grow()
+    {
+        int position = out.position();
+        chars = Arrays.copyOf(chars, 2 * chars.length);
+        out = CharBuffer.wrap(chars);
+        out.position(position);
+    }
+}
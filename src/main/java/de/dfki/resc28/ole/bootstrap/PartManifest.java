@@ -0,0 +1,152 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records path, size, modification time and content hash of every part file
+ * a bootstrap has loaded, so that the next bootstrap only has to handle the
+ * parts that were added, changed or removed in between.
+ *
+ * The manifest is a tab separated text file with one line per part.
+ */
+public class PartManifest
+{
+    public static final class Entry
+    {
+        public final long size;
+        public final long lastModified;
+        public final String hash;
+
+        public Entry(long size, long lastModified, String hash)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    public static PartManifest load(File file) throws IOException
+    {
+        PartManifest manifest = new PartManifest();
+        BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        try
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                String[] fields = line.split("\t");
+                if (fields.length == 4)
+                    manifest.entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest to a temporary file first, so that an interrupted
+     * save never leaves a truncated manifest behind.
+     */
+    public void save(File file) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8));
+        try
+        {
+            for (Map.Entry<String, Entry> entry : entries.entrySet())
+            {
+                Entry e = entry.getValue();
+                writer.format("%s\t%d\t%d\t%s%n", entry.getKey(), e.size, e.lastModified, e.hash);
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Entry get(String path)
+    {
+        return entries.get(path);
+    }
+
+    public Set<String> paths()
+    {
+        return entries.keySet();
+    }
+
+    /**
+     * Records the current state of a part file and compares it to the state
+     * recorded in a previous manifest. The content is only hashed if size or
+     * modification time differ.
+     *
+     * @return whether the file is new or its content has changed
+     */
+    public boolean update(File file, PartManifest previous) throws IOException
+    {
+        String path = file.getName();
+        Entry before = previous.get(path);
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        if (before != null && before.size == size && before.lastModified == lastModified)
+        {
+            entries.put(path, before);
+            return false;
+        }
+
+        String hash = hash(file);
+        entries.put(path, new Entry(size, lastModified, hash));
+        return before == null || !before.hash.equals(hash);
+    }
+
+    private static String hash(File file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[1 << 16];
+        InputStream is = new FileInputStream(file);
+        try
+        {
+            for (int n = is.read(buffer); n != -1; n = is.read(buffer))
+                digest.update(buffer, 0, n);
+        }
+        finally
+        {
+            is.close();
+        }
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+}
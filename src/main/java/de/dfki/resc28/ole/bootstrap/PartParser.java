@@ -0,0 +1,265 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import de.dfki.resc28.LDrawParser.LDrawLexer;
+import de.dfki.resc28.LDrawParser.LDrawParser;
+import de.dfki.resc28.LDrawParser.LDrawParser.Author_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.Category_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.Comment_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.Help_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.History_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.Keywords_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.Ldraw_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.License_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.Reference_rowContext;
+import de.dfki.resc28.LDrawParser.LDrawParser.TitleContext;
+import de.dfki.resc28.ole.bootstrap.listener.AssetListener;
+import de.dfki.resc28.ole.bootstrap.listener.LdrawDistributionListener;
+import de.dfki.resc28.ole.bootstrap.listener.ListenerMultiplexer;
+import de.dfki.resc28.ole.bootstrap.listener.StreamingListener;
+import de.dfki.resc28.ole.bootstrap.listener.UserListener;
+import de.dfki.resc28.ole.bootstrap.metrics.BootstrapMetrics;
+
+/**
+ * Parses part files with a lexer and parser that are reused for every file
+ * parsed on the same thread.
+ *
+ * With two-stage parsing a file is first parsed with the faster SLL
+ * prediction and an error strategy that gives up on the first syntax error.
+ * Only files that fail are parsed again with full LL prediction and the
+ * default error recovery, so every file ends up with the same graphs and
+ * error reports as with a single full LL parse.
+ *
+ * The time spent parsing is counted across all threads, so that the two
+ * modes can be compared on the whole library.
+ */
+class PartParser
+{
+    // the rows whose children the listeners read, see StreamingListener
+    private static final List<Class<? extends ParserRuleContext>> ROW_TYPES = Collections.unmodifiableList(
+        Arrays.<Class<? extends ParserRuleContext>>asList(
+            TitleContext.class, Author_rowContext.class, Category_rowContext.class, Comment_rowContext.class,
+            Help_rowContext.class, History_rowContext.class, Keywords_rowContext.class, Ldraw_rowContext.class,
+            License_rowContext.class, Reference_rowContext.class));
+
+    private static final CommonTokenFactory COPYING_TOKENS = new CommonTokenFactory(true);
+
+    private static final ThreadLocal<PartParser> PARSERS = new ThreadLocal<PartParser>()
+    {
+        @Override
+        protected PartParser initialValue()
+        {
+            return new PartParser();
+        }
+    };
+
+    private static final AtomicLong parts = new AtomicLong();
+    private static final AtomicLong parseNanos = new AtomicLong();
+    private static final AtomicLong fallbacks = new AtomicLong();
+    private static final AtomicLong fallbackNanos = new AtomicLong();
+
+    private final LDrawLexer lexer = new LDrawLexer(null);
+    private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+    private final LDrawParser parser = new LDrawParser(null);
+    private final PartInput partInput = new PartInput(App.fPartsCharset, App.fMapThreshold);
+
+    private PartParser()
+    {
+    }
+
+    /**
+     * @return the parser of the calling thread
+     */
+    static PartParser forCurrentThread()
+    {
+        return PARSERS.get();
+    }
+
+    ParsedPart parse(File file, boolean replacing) throws IOException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            if (App.fTwoStageParse)
+            {
+                try
+                {
+                    return parse(file, replacing, true);
+                }
+                catch (ParseCancellationException e)
+                {
+                    // the graphs of the first attempt are incomplete and dropped with it
+                    long fallbackStart = System.nanoTime();
+                    try
+                    {
+                        return parse(file, replacing, false);
+                    }
+                    finally
+                    {
+                        fallbacks.incrementAndGet();
+                        fallbackNanos.addAndGet(System.nanoTime() - fallbackStart);
+                    }
+                }
+            }
+            return parse(file, replacing, false);
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            parts.incrementAndGet();
+            parseNanos.addAndGet(nanos);
+            BootstrapMetrics.get().parsed(file.getName(), file.length(), nanos);
+        }
+    }
+
+    /**
+     * @return the time spent parsing so far, and how much of it went into
+     *         files that had to be parsed again
+     */
+    static String report()
+    {
+        return String.format("%d parts in %.1f s (%d parsed again with full LL prediction in %.1f s)",
+                parts.get(), parseNanos.get() / (double) TimeUnit.SECONDS.toNanos(1),
+                fallbacks.get(), fallbackNanos.get() / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private ParsedPart parse(File file, boolean replacing, boolean sll) throws IOException
+    {
+        ParsedPart part = new ParsedPart(file, replacing);
+
+        // build the asset and distribution graphs in a single walk
+        ListenerMultiplexer listeners = new ListenerMultiplexer(
+                new AssetListener(part, part),
+                new LdrawDistributionListener(part, part));
+        UserListener users = null;
+        if (App.fAuthors != null)
+        {
+            users = new UserListener(part, App.fAuthors);
+            listeners.add(users);
+        }
+
+        // parse the .DAT file and create RDF models for asset and its .DAT distribution
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            TokenStream input;
+            boolean unbuffered = App.fStreamingParse && channel.size() > App.fUnbufferedThreshold;
+            if (unbuffered)
+            {
+                // very large parts are never held in memory as a whole
+                Reader reader = new BufferedReader(Channels.newReader(channel, PartInput.newDecoder(App.fPartsCharset), -1));
+                if (App.fMetadataOnly)
+                    reader = new GeometryFilter(reader);
+
+                lexer.setInputStream(new UnbufferedCharStream(reader));
+                lexer.setTokenFactory(COPYING_TOKENS);
+                input = new UnbufferedTokenStream<CommonToken>(lexer);
+            }
+            else
+            {
+                long start = System.nanoTime();
+                int length = partInput.read(channel);
+                if (App.fMetadataOnly)
+                    length = GeometryFilter.strip(partInput.chars(), length);
+                BootstrapMetrics.get().record("read", start);
+
+                lexer.setInputStream(new ANTLRInputStream(partInput.chars(), length));
+                lexer.setTokenFactory(CommonTokenFactory.DEFAULT);
+                tokens.setTokenSource(lexer);
+
+                // lex ahead, so that lexing and parsing are timed on their own
+                start = System.nanoTime();
+                tokens.fill();
+                BootstrapMetrics.get().record("lex", start);
+                input = tokens;
+            }
+
+            parser.setInputStream(input);
+            parser.removeParseListeners();
+            if (sll)
+            {
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                parser.setErrorHandler(new BailErrorStrategy());
+            }
+            else
+            {
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.setErrorHandler(unbuffered ? new StreamingErrorStrategy() : new DefaultErrorStrategy());
+            }
+
+            // with unbuffered streams, parsing includes reading and lexing
+            long start = System.nanoTime();
+            if (App.fStreamingParse)
+            {
+                // the listeners are called while parsing, only the row being parsed is kept
+                parser.setBuildParseTree(false);
+                parser.addParseListener(new StreamingListener(listeners, ROW_TYPES));
+                parser.file();
+                BootstrapMetrics.get().record(sll ? "parse.sll" : "parse", start);
+            }
+            else
+            {
+                parser.setBuildParseTree(true);
+                ParseTree tree = parser.file();
+                BootstrapMetrics.get().record(sll ? "parse.sll" : "parse", start);
+
+                start = System.nanoTime();
+                new ParseTreeWalker().walk(listeners, tree);
+                BootstrapMetrics.get().record("walk", start);
+            }
+        }
+        finally
+        {
+            release();
+        }
+
+        // only now, as an attempt that is given up must not name any users
+        if (users != null)
+            users.register();
+        return part;
+    }
+
+    /**
+     * Lets go of the file, so that its tokens are not kept until the next
+     * file is parsed.
+     */
+    private void release()
+    {
+        parser.removeParseListeners();
+        parser.setInputStream(null);
+        tokens.setTokenSource(lexer);
+        lexer.setInputStream(null);
+        partInput.release();
+    }
+}
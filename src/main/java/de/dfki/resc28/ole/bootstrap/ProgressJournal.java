@@ -0,0 +1,123 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records the parts whose graphs are known to be in the store, so that an
+ * interrupted bootstrap can be resumed without writing them again.
+ *
+ * The journal is a text file with the file name of one part per line. Parts
+ * are only appended when the journal is committed, which the writer does
+ * right after flushing the sink; each commit is forced to disk before the
+ * bootstrap goes on. A line that was cut short by a crash has no line break
+ * and is ignored when the journal is loaded.
+ */
+public class ProgressJournal
+{
+    private final File file;
+    private final FileChannel channel;
+    private final List<String> pending = new ArrayList<String>();
+
+    /**
+     * @param resume whether to append to the journal of an interrupted
+     *        bootstrap, or to start a new one
+     */
+    public ProgressJournal(File file, boolean resume) throws IOException
+    {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // drop a line that was cut short, so the next one does not run into it
+        channel.truncate(resume ? lastLineEnd() : 0);
+        channel.position(channel.size());
+    }
+
+    /**
+     * @return the file names of the parts committed to the given journal
+     */
+    public static Set<String> load(File file) throws IOException
+    {
+        Set<String> committed = new HashSet<String>();
+        if (!file.isFile())
+            return committed;
+
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0; end = text.indexOf('\n', start))
+        {
+            if (end > start)
+                committed.add(text.substring(start, end));
+            start = end + 1;
+        }
+        return committed;
+    }
+
+    /**
+     * Notes a part whose graphs have been handed to the sink.
+     */
+    public void record(String fileName)
+    {
+        pending.add(fileName);
+    }
+
+    /**
+     * Appends the parts noted since the last commit. The sink must have been
+     * flushed before.
+     */
+    public void commit() throws IOException
+    {
+        if (pending.isEmpty())
+            return;
+
+        StringBuilder lines = new StringBuilder();
+        for (String fileName : pending)
+            lines.append(fileName).append('\n');
+
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        channel.force(false);
+        pending.clear();
+    }
+
+    private long lastLineEnd() throws IOException
+    {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        for (long end = channel.size(); end > 0; end--)
+        {
+            b.clear();
+            if (channel.read(b, end - 1) == 1 && b.get(0) == '\n')
+                return end;
+        }
+        return 0;
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Closes and removes the journal, once the bootstrap is complete.
+     */
+    public void delete() throws IOException
+    {
+        channel.close();
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.NoViableAltException;
+import org.antlr.v4.runtime.Parser;
+
+/**
+ * Reports syntax errors without looking back into the token stream.
+ *
+ * An unbuffered token stream only holds the tokens still needed for
+ * prediction, so the default report of a missing alternative, which quotes
+ * the input from where the decision started, would fail. Only the offending
+ * token is quoted instead.
+ */
+class StreamingErrorStrategy extends DefaultErrorStrategy
+{
+    @Override
+    protected void reportNoViableAlternative(Parser recognizer, NoViableAltException e)
+    {
+        String msg = "no viable alternative at input " + getTokenErrorDisplay(e.getOffendingToken());
+        recognizer.notifyErrorListeners(e.getOffendingToken(), msg, e);
+    }
+}
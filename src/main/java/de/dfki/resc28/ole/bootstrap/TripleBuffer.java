@@ -0,0 +1,118 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+
+/**
+ * Collects the triples of a graph that is built once and then written, such
+ * as the asset and distribution graphs of a part.
+ *
+ * Unlike a default model, the triples are not indexed; they are only kept
+ * once each, in the order they were added, and the graph shares the prefix
+ * mapping of the bootstrapper instead of holding a copy. Finding triples by
+ * a pattern scans all of them, which is fine for writing the graph, but not
+ * for querying it.
+ */
+public class TripleBuffer extends GraphBase
+{
+    private final Set<Triple> triples = new LinkedHashSet<Triple>();
+    private final PrefixMapping prefixes;
+
+    /**
+     * @param prefixes the prefix mapping of the graph, which is not copied
+     */
+    public TripleBuffer(PrefixMapping prefixes)
+    {
+        this.prefixes = prefixes;
+    }
+
+    public void add(Resource s, Property p, RDFNode o)
+    {
+        triples.add(Triple.create(s.asNode(), p.asNode(), o.asNode()));
+    }
+
+    /**
+     * Adds a plain literal, as {@link Model#add(Resource, Property, String)}
+     * does.
+     */
+    public void add(Resource s, Property p, String o)
+    {
+        triples.add(Triple.create(s.asNode(), p.asNode(), NodeFactory.createLiteral(o, "")));
+    }
+
+    /**
+     * @return a model view of this graph, e.g. to hand it to a graph sink
+     */
+    public Model asModel()
+    {
+        return ModelFactory.createModelForGraph(this);
+    }
+
+    @Override
+    public void performAdd(Triple t)
+    {
+        triples.add(t);
+    }
+
+    @Override
+    public void performDelete(Triple t)
+    {
+        triples.remove(t);
+    }
+
+    @Override
+    public void clear()
+    {
+        triples.clear();
+        getEventManager().notifyEvent(this, GraphEvents.removeAll);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(final Triple pattern)
+    {
+        return WrappedIterator.create(triples.iterator()).filterKeep(new Predicate<Triple>()
+        {
+            public boolean test(Triple t)
+            {
+                return pattern.matches(t);
+            }
+        });
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple t)
+    {
+        return t.isConcrete() ? triples.contains(t) : super.graphBaseContains(t);
+    }
+
+    @Override
+    protected int graphBaseSize()
+    {
+        return triples.size();
+    }
+
+    @Override
+    protected PrefixMapping createPrefixMapping()
+    {
+        return prefixes;
+    }
+}
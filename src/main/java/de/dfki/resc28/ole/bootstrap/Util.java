@@ -7,12 +7,16 @@ package de.dfki.resc28.ole.bootstrap;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.apache.commons.lang.StringUtils;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 
 /**
@@ -51,6 +55,32 @@ public final class Util {
         }
     }
 
+    /**
+     * Names a resource that would otherwise be a blank node after the resource
+     * it belongs to and its content, e.g. {@code .../assets/3001#changeNote-<hash>},
+     * so that every run names it the same.
+     */
+    public static Resource skolemIri(Resource owner, String kind, String... content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+        for (String value : content) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        // 64 bits are plenty to tell the rows of a single part apart
+        byte[] hash = digest.digest();
+        StringBuilder iri = new StringBuilder(owner.getURI()).append('#').append(kind).append('-');
+        for (int i = 0; i < 8; i++) {
+            iri.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return ResourceFactory.createResource(iri.toString());
+    }
+
     public static String appendSegmentToPath(String path, String segment) {
         boolean segmentStartsWithSlash = !segment.isEmpty() && segment.charAt(0) == '/';
 
@@ -10,17 +10,14 @@ package de.dfki.resc28.ole.bootstrap.listener;
 
 
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.rdf.model.Literal;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.apache.jena.vocabulary.SKOS;
-import org.apache.jena.vocabulary.XSD;
 
 import de.dfki.resc28.LDrawParser.LDrawParser.Author_rowContext;
 import de.dfki.resc28.LDrawParser.LDrawParser.Category_rowContext;
@@ -34,9 +31,11 @@ import de.dfki.resc28.LDrawParser.LDrawParser.License_rowContext;
 import de.dfki.resc28.LDrawParser.LDrawParser.Reference_rowContext;
 import de.dfki.resc28.LDrawParser.LDrawParser.TitleContext;
 import de.dfki.resc28.LDrawParser.LDrawParserBaseListener;
-import de.dfki.resc28.igraphstore.IGraphStore;
 import de.dfki.resc28.ole.bootstrap.App;
+import de.dfki.resc28.ole.bootstrap.ParsedPart;
+import de.dfki.resc28.ole.bootstrap.TripleBuffer;
 import de.dfki.resc28.ole.bootstrap.Util;
+import de.dfki.resc28.ole.bootstrap.store.GraphCollector;
 import de.dfki.resc28.ole.bootstrap.vocabularies.ADMS;
 import de.dfki.resc28.ole.bootstrap.vocabularies.DCAT;
 import de.dfki.resc28.ole.bootstrap.vocabularies.FOAF;
@@ -46,23 +45,21 @@ import de.dfki.resc28.ole.bootstrap.vocabularies.FOAF;
 
 public class AssetListener extends LDrawParserBaseListener
 { 	
-	private Model assetModel;
+	private TripleBuffer assetGraph;
 	private Resource asset;
 	private Resource distribution;
 	
-	private String fileName;
-	private String basename;
+	private ParsedPart part;
 	
-	private IGraphStore graphStore;
+	private GraphCollector graphSink;
 	
 	
-	public AssetListener(String fileName, IGraphStore graphStore)
+	public AssetListener(ParsedPart part, GraphCollector graphSink)
 	{
 		super();
 		
-		this.fileName  = fileName;
-		this.basename = FilenameUtils.getBaseName(fileName);
-		this.graphStore = graphStore;
+		this.part = part;
+		this.graphSink = graphSink;
 	}
 
 
@@ -70,56 +67,33 @@ public class AssetListener extends LDrawParserBaseListener
 	public void enterFile(FileContext ctx) 
 	{
 		// set NS prefixes
-		assetModel = ModelFactory.createDefaultModel();
-		assetModel.setNsPrefixes(FOAF.NAMESPACE);
-		assetModel.setNsPrefixes(ADMS.NAMESPACE);
-		assetModel.setNsPrefixes(DCAT.NAMESPACE);
-		assetModel.setNsPrefix("dcterms", DCTerms.NS);
-		assetModel.setNsPrefix("rdf", RDF.getURI());
-		assetModel.setNsPrefix("rdfs", RDFS.getURI());
-		assetModel.setNsPrefix("skos", SKOS.getURI());
-		assetModel.setNsPrefix("xsd", XSD.NS);
-		assetModel.setNsPrefix("ldraw", "http://www.ldraw.org/ns/ldraw#");
-		assetModel.setNsPrefix("users", App.fUserBaseUri);
-		assetModel.setNsPrefix("assets", App.fAssetBaseUri);
-		assetModel.setNsPrefix("distributions", App.fDistributionBaseUri);
+		assetGraph = new TripleBuffer(App.fPrefixes);
 
 		// create asset resource
-		asset = assetModel.createResource(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(basename)));
-		assetModel.add( asset, RDF.type, ADMS.Asset );
+		asset = part.getAsset();
+		assetGraph.add( asset, RDF.type, ADMS.Asset );
 
 //		landingPage = assetModel.createResource(asset.getURI() + ".html" );
 //		assetModel.add(landingPage, RDF.type, FOAF.Document);
 //		assetModel.add( asset, DCAT.landingPage, landingPage);
 		
 		// create and add distribution resource 
-		distribution = assetModel.createResource(Util.joinPath(App.fDistributionBaseUri, Util.urlEncoded(basename)));
-		assetModel.add( distribution, RDF.type, ADMS.AssetDistribution );
-		assetModel.add( distribution, DCTerms.format, "application/x-ldraw" );
-		assetModel.add( distribution, DCAT.mediaType, "application/x-ldraw" );
-		Literal downloadURL = assetModel.createTypedLiteral( Util.joinPath(App.fStorageURI, Util.urlEncoded(fileName)), XSDDatatype.XSDanyURI );
-		assetModel.add( distribution, DCAT.downloadURL, downloadURL);
-		assetModel.add( asset, DCAT.distribution, distribution );
+		distribution = part.getDistribution();
+		assetGraph.add( distribution, RDF.type, ADMS.AssetDistribution );
+		assetGraph.add( distribution, DCTerms.format, "application/x-ldraw" );
+		assetGraph.add( distribution, DCAT.mediaType, "application/x-ldraw" );
+		assetGraph.add( distribution, DCAT.downloadURL, part.getDownloadURL());
+		assetGraph.add( asset, DCAT.distribution, distribution );
 		
-		Resource repo = assetModel.createResource(Util.joinPath(App.fBaseURI, "repo"));
-		assetModel.add( repo, RDF.type, ADMS.AssetRepository);
-		assetModel.add( asset, DCTerms.isReferencedBy, repo );
+		Resource repo = ResourceFactory.createResource(App.fRepoUri);
+		assetGraph.add( repo, RDF.type, ADMS.AssetRepository);
+		assetGraph.add( asset, DCTerms.isReferencedBy, repo );
 	};
 	
 	@Override
 	public void exitFile(FileContext ctx) 
 	{
-		graphStore.addToNamedGraph(asset.getURI(), assetModel);
-		
-		// slow down to prevent org.apache.jena.atlas.web.HttpException: 500 - Direct buffer memory
-		try 
-		{
-			Thread.sleep(50);
-		} 
-		catch (InterruptedException e) 
-		{
-			e.printStackTrace();
-		}
+		graphSink.addToNamedGraph(asset.getURI(), assetGraph.asModel());
 	};
 	
 	
@@ -127,7 +101,7 @@ public class AssetListener extends LDrawParserBaseListener
 	public void exitTitle(TitleContext ctx)
 	{
 		if (ctx.free_text() != null )
-			assetModel.add( asset, DCTerms.description, Util.toStringLiteral(ctx.free_text(), " ") );
+			assetGraph.add( asset, DCTerms.description, Util.toStringLiteral(ctx.free_text(), " ") );
 	}
 
 	@Override
@@ -137,9 +111,9 @@ public class AssetListener extends LDrawParserBaseListener
 		{
 			if (ctx.realname() != null)
 			{
-				Resource creator = assetModel.createResource(Util.joinPath(App.fUserBaseUri, Util.toURLEncodedStringLiteral(ctx.realname().STRING(), "_").getString()));
-				assetModel.add( asset, FOAF.maker, creator );
-				assetModel.add( asset,  DCTerms.creator, creator );
+				Resource creator = App.fIriCache.user(ctx.realname().STRING());
+				assetGraph.add( asset, FOAF.maker, creator );
+				assetGraph.add( asset,  DCTerms.creator, creator );
 				
 //				assetModel.add( creator, RDF.type, FOAF.Agent );
 //				assetModel.add( creator, FOAF.name, Util.toStringLiteral(ctx.realname().STRING(), " ") );
@@ -164,14 +138,14 @@ public class AssetListener extends LDrawParserBaseListener
 	{	
 		if (ctx.category() != null)
 			for (TerminalNode c : ctx.category().STRING())
-				assetModel.add( asset, DCAT.theme, c.getText() );
+				assetGraph.add( asset, DCAT.theme, c.getText() );
 	}
 
 	@Override
 	public void exitComment_row(Comment_rowContext ctx)
 	{
 		if (ctx.free_text() != null)
-			assetModel.add( asset, RDFS.comment, Util.toStringLiteral(ctx.free_text(), " ") );
+			assetGraph.add( asset, RDFS.comment, Util.toStringLiteral(ctx.free_text(), " ") );
 	}
 
 	@Override
@@ -179,16 +153,20 @@ public class AssetListener extends LDrawParserBaseListener
 	{
 		if (ctx != null)
 		{
-			Resource changeNote = assetModel.createResource();
-			assetModel.add( changeNote, DCTerms.date, assetModel.createTypedLiteral(ctx.YYYY_MM_DD().getText(), XSDDatatype.XSDdate));
-			assetModel.add( changeNote, RDF.value, Util.toStringLiteral(ctx.free_text(), " ") );
-			assetModel.add( asset, SKOS.changeNote, changeNote );
+			String date = ctx.YYYY_MM_DD().getText();
+			Literal value = Util.toStringLiteral(ctx.free_text(), " ");
+			Resource contributor = ctx.realname() != null ? App.fIriCache.user(ctx.realname().STRING()) : null;
+
+			// named after its content, so that a re-run does not add another copy
+			Resource changeNote = Util.skolemIri(asset, "changeNote", date, value.getLexicalForm(), contributor != null ? contributor.getURI() : "");
+			assetGraph.add( changeNote, DCTerms.date, ResourceFactory.createTypedLiteral(date, XSDDatatype.XSDdate));
+			assetGraph.add( changeNote, RDF.value, value );
+			assetGraph.add( asset, SKOS.changeNote, changeNote );
 			
-			if (ctx.realname() != null)
+			if (contributor != null)
 			{
-				Resource contributor = assetModel.createResource(Util.joinPath(App.fUserBaseUri, Util.toURLEncodedStringLiteral(ctx.realname().STRING(), "_").toString()));
-				assetModel.add( changeNote,  DCTerms.creator, contributor);
-				assetModel.add( contributor, DCTerms.contributor, asset );
+				assetGraph.add( changeNote,  DCTerms.creator, contributor);
+				assetGraph.add( contributor, DCTerms.contributor, asset );
 				
 //				assetModel.add( contributor, RDF.type, FOAF.Agent );
 //				assetModel.add( contributor, FOAF.name, Util.toStringLiteral(ctx.realname().STRING(), " ") );
@@ -203,7 +181,7 @@ public class AssetListener extends LDrawParserBaseListener
 	public void exitKeywords_row(Keywords_rowContext ctx)
 	{
 		if (ctx.free_text() != null)
-			assetModel.add( asset, DCAT.keyword, Util.toStringLiteral(ctx.free_text(), " ") );
+			assetGraph.add( asset, DCAT.keyword, Util.toStringLiteral(ctx.free_text(), " ") );
 	}
 
 	@Override
@@ -211,10 +189,11 @@ public class AssetListener extends LDrawParserBaseListener
 	{
 		if (ctx.free_text() != null)
 		{
-			Resource rightsStatement = assetModel.createResource();
-			assetModel.add( rightsStatement, RDF.type, DCTerms.RightsStatement );
-			assetModel.add( rightsStatement, RDFS.label, Util.toStringLiteral(ctx.free_text(), " ") );
-			assetModel.add( asset, DCTerms.rights, rightsStatement );
+			Literal label = Util.toStringLiteral(ctx.free_text(), " ");
+			Resource rightsStatement = Util.skolemIri(asset, "rights", label.getLexicalForm());
+			assetGraph.add( rightsStatement, RDF.type, DCTerms.RightsStatement );
+			assetGraph.add( rightsStatement, RDFS.label, label );
+			assetGraph.add( asset, DCTerms.rights, rightsStatement );
 		}
 	}
 
@@ -233,18 +212,18 @@ public class AssetListener extends LDrawParserBaseListener
 	{
 		if (ctx.subPart() != null)
 		{
-			Resource subPart = assetModel.createResource(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(FilenameUtils.getBaseName(ctx.subPart().FILENAME().getText())).toString()));
-			assetModel.add( asset, ADMS.includedAsset, subPart );
+			Resource subPart = App.fIriCache.asset(ctx.subPart().FILENAME().getText());
+			assetGraph.add( asset, ADMS.includedAsset, subPart );
 		}
 		if (ctx.subFile() != null)
 		{
-			Resource subFile = assetModel.createResource(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(FilenameUtils.getBaseName(ctx.subFile().FILENAME().getText())).toString()));
-			assetModel.add( asset, ADMS.includedAsset, subFile );
+			Resource subFile = App.fIriCache.asset(ctx.subFile().FILENAME().getText());
+			assetGraph.add( asset, ADMS.includedAsset, subFile );
 		}
 		if (ctx.hiResPrimitive() != null)
 		{
-			Resource hisResPrimitive = assetModel.createResource(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(FilenameUtils.getBaseName(ctx.hiResPrimitive().FILENAME().getText())).toString()));
-			assetModel.add( asset, ADMS.includedAsset, hisResPrimitive );
+			Resource hisResPrimitive = App.fIriCache.asset(ctx.hiResPrimitive().FILENAME().getText());
+			assetGraph.add( asset, ADMS.includedAsset, hisResPrimitive );
 		}
 	}
 
@@ -252,7 +231,7 @@ public class AssetListener extends LDrawParserBaseListener
 	{
 		if (ctx.free_text() != null)
 		{
-			assetModel.add( asset, SKOS.note, Util.toStringLiteral(ctx.free_text(), " ") );
+			assetGraph.add( asset, SKOS.note, Util.toStringLiteral(ctx.free_text(), " ") );
 		}
 	}
 
@@ -260,7 +239,7 @@ public class AssetListener extends LDrawParserBaseListener
 	{
 		if (ctx != null)
 		{
-			assetModel.add( asset, DCTerms.type, assetModel.createResource("http://www.ldraw.org/ns/ldraw#" + Util.urlEncoded(ctx.type().TYPE().getText())));
+			assetGraph.add( asset, DCTerms.type, App.fIriCache.ldrawType(ctx.type().TYPE().getText()));
 //			String downloadURL ;
 //			
 //			if (ctx.type().TYPE().getText().contains("Unofficial_Part") | ctx.type().TYPE().getText().contains("Unofficial_Subpart") | ctx.type().TYPE().getText().contains("Unofficial_Sub-part"))
@@ -6,76 +6,54 @@
 
 package de.dfki.resc28.ole.bootstrap.listener;
 
-import org.apache.commons.io.FilenameUtils;
-import org.apache.jena.datatypes.xsd.XSDDatatype;
-import org.apache.jena.rdf.model.Literal;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
-import org.apache.jena.vocabulary.RDFS;
-import org.apache.jena.vocabulary.SKOS;
-import org.apache.jena.vocabulary.XSD;
 
 import de.dfki.resc28.LDrawParser.LDrawParser.Author_rowContext;
 import de.dfki.resc28.LDrawParser.LDrawParser.FileContext;
 import de.dfki.resc28.LDrawParser.LDrawParserBaseListener;
-import de.dfki.resc28.igraphstore.IGraphStore;
 import de.dfki.resc28.ole.bootstrap.App;
-import de.dfki.resc28.ole.bootstrap.Util;
+import de.dfki.resc28.ole.bootstrap.ParsedPart;
+import de.dfki.resc28.ole.bootstrap.TripleBuffer;
+import de.dfki.resc28.ole.bootstrap.store.GraphCollector;
 import de.dfki.resc28.ole.bootstrap.vocabularies.ADMS;
 import de.dfki.resc28.ole.bootstrap.vocabularies.DCAT;
 import de.dfki.resc28.ole.bootstrap.vocabularies.FOAF;
 
 public class LdrawDistributionListener extends LDrawParserBaseListener
 {
-	private Model distributionModel;
+	private TripleBuffer distributionGraph;
 	private Resource distribution;
 	private Resource asset;
 
-	private String basename;
-	private String fileName;
+	private ParsedPart part;
 
-	private IGraphStore graphStore;
+	private GraphCollector graphSink;
 	
 	
 	
-	public LdrawDistributionListener(String fileName, IGraphStore graphStore)
+	public LdrawDistributionListener(ParsedPart part, GraphCollector graphSink)
 	{
 		super();
 		
-		this.basename = FilenameUtils.getBaseName(fileName);
-		this.graphStore = graphStore;
-		this.fileName = fileName;
+		this.part = part;
+		this.graphSink = graphSink;
 	}
 	
 	@Override
 	public void enterFile(FileContext ctx) 
 	{
-		distributionModel = ModelFactory.createDefaultModel();
-		distributionModel.setNsPrefixes(FOAF.NAMESPACE);
-		distributionModel.setNsPrefixes(ADMS.NAMESPACE);
-		distributionModel.setNsPrefixes(DCAT.NAMESPACE);
-		distributionModel.setNsPrefix("dcterms", DCTerms.NS);
-		distributionModel.setNsPrefix("rdf", RDF.getURI());
-		distributionModel.setNsPrefix("rdfs", RDFS.getURI());
-		distributionModel.setNsPrefix("skos", SKOS.getURI());
-		distributionModel.setNsPrefix("xsd", XSD.NS);
-		distributionModel.setNsPrefix("ldraw", "http://www.ldraw.org/ns/ldraw#");
-		distributionModel.setNsPrefix("users", App.fUserBaseUri);
-		distributionModel.setNsPrefix("assets", App.fAssetBaseUri);
-		distributionModel.setNsPrefix("distributions", App.fDistributionBaseUri);
+		distributionGraph = new TripleBuffer(App.fPrefixes);
 
-		asset = distributionModel.createResource(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(basename)));
-		distributionModel.add( asset, RDF.type, ADMS.Asset);
-		distribution = distributionModel.createResource(Util.joinPath(App.fDistributionBaseUri, Util.urlEncoded(basename)));
-		distributionModel.add( distribution, RDF.type, ADMS.AssetDistribution );
-		distributionModel.add( distribution, DCTerms.format, "application/x-ldraw" );
-		distributionModel.add( distribution, DCAT.mediaType, "application/x-ldraw" );
-		distributionModel.add( distribution, DCTerms.isReferencedBy, asset );
-		Literal downloadURL = distributionModel.createTypedLiteral( Util.joinPath(App.fStorageURI, Util.urlEncoded(fileName)), XSDDatatype.XSDanyURI );
-		distributionModel.add( distribution, DCAT.downloadURL, downloadURL);
+		asset = part.getAsset();
+		distributionGraph.add( asset, RDF.type, ADMS.Asset);
+		distribution = part.getDistribution();
+		distributionGraph.add( distribution, RDF.type, ADMS.AssetDistribution );
+		distributionGraph.add( distribution, DCTerms.format, "application/x-ldraw" );
+		distributionGraph.add( distribution, DCAT.mediaType, "application/x-ldraw" );
+		distributionGraph.add( distribution, DCTerms.isReferencedBy, asset );
+		distributionGraph.add( distribution, DCAT.downloadURL, part.getDownloadURL());
 	};
 
 	@Override
@@ -83,17 +61,7 @@ public class LdrawDistributionListener extends LDrawParserBaseListener
 	{
 		if (distribution != null)
 		{
-			graphStore.addToNamedGraph(distribution.getURI(), distributionModel);
-		
-			// slow down to prevent org.apache.jena.atlas.web.HttpException: 500 - Direct buffer memory
-			try 
-			{
-				Thread.sleep(50);
-			} 
-			catch (InterruptedException e) 
-			{
-				e.printStackTrace();
-			}
+			graphSink.addToNamedGraph(distribution.getURI(), distributionGraph.asModel());
 		}
 	}
 	
@@ -105,9 +73,9 @@ public class LdrawDistributionListener extends LDrawParserBaseListener
 		{
 			if (ctx.realname() != null)
 			{
-				Resource creator = distributionModel.createResource(Util.joinPath(App.fUserBaseUri, Util.toURLEncodedStringLiteral(ctx.realname().STRING(), "_").toString()));
-				distributionModel.add( distribution, FOAF.maker, creator );
-				distributionModel.add( distribution,  DCTerms.creator, creator );
+				Resource creator = App.fIriCache.user(ctx.realname().STRING());
+				distributionGraph.add( distribution, FOAF.maker, creator );
+				distributionGraph.add( distribution,  DCTerms.creator, creator );
 			}
 		}
 	}
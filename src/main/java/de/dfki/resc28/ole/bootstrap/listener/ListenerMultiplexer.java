@@ -0,0 +1,73 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+
+package de.dfki.resc28.ole.bootstrap.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Forwards the events of a single parse tree walk to any number of listeners,
+ * so that every additional output costs a listener instead of another walk.
+ * Listeners see the events in the order they have been added.
+ */
+public class ListenerMultiplexer implements ParseTreeListener
+{
+	private final List<ParseTreeListener> listeners = new ArrayList<ParseTreeListener>();
+
+	public ListenerMultiplexer(ParseTreeListener... listeners)
+	{
+		super();
+
+		for (ParseTreeListener listener : listeners)
+			add(listener);
+	}
+
+	public ListenerMultiplexer add(ParseTreeListener listener)
+	{
+		listeners.add(listener);
+		return this;
+	}
+
+	@Override
+	public void enterEveryRule(ParserRuleContext ctx)
+	{
+		for (ParseTreeListener listener : listeners)
+		{
+			listener.enterEveryRule(ctx);
+			ctx.enterRule(listener);
+		}
+	}
+
+	@Override
+	public void exitEveryRule(ParserRuleContext ctx)
+	{
+		for (ParseTreeListener listener : listeners)
+		{
+			ctx.exitRule(listener);
+			listener.exitEveryRule(ctx);
+		}
+	}
+
+	@Override
+	public void visitTerminal(TerminalNode node)
+	{
+		for (ParseTreeListener listener : listeners)
+			listener.visitTerminal(node);
+	}
+
+	@Override
+	public void visitErrorNode(ErrorNode node)
+	{
+		for (ParseTreeListener listener : listeners)
+			listener.visitErrorNode(node);
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+
+package de.dfki.resc28.ole.bootstrap.listener;
+
+import java.util.List;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Forwards the events of a parser that does not build a parse tree to a
+ * listener, so that triples are emitted while the file is parsed.
+ *
+ * Without a parse tree the parser still adds the tokens to the rule being
+ * parsed, but never adds a rule to its parent, so the accessors of a row
+ * context (e.g. {@code free_text()}) would find nothing. This listener adds
+ * every rule inside one of the given row types to its parent once the rule
+ * is complete, which is before the parent is exited.
+ *
+ * Nothing outside of a row is kept: rows are not added to their parents and
+ * tokens and rules around the rows are removed as soon as they are parsed,
+ * so the memory held does not grow with the size of the file.
+ */
+public class StreamingListener implements ParseTreeListener
+{
+	private final ParseTreeListener listener;
+	private final List<Class<? extends ParserRuleContext>> rowTypes;
+
+	/**
+	 * @param rowTypes the contexts that listeners read the children of
+	 */
+	public StreamingListener(ParseTreeListener listener, List<Class<? extends ParserRuleContext>> rowTypes)
+	{
+		super();
+
+		this.listener = listener;
+		this.rowTypes = rowTypes;
+	}
+
+	@Override
+	public void enterEveryRule(ParserRuleContext ctx)
+	{
+		listener.enterEveryRule(ctx);
+	}
+
+	@Override
+	public void exitEveryRule(ParserRuleContext ctx)
+	{
+		listener.exitEveryRule(ctx);
+
+		ParserRuleContext parent = ctx.getParent();
+		if (parent != null && isInRow(parent))
+			parent.addChild(ctx);
+	}
+
+	@Override
+	public void visitTerminal(TerminalNode node)
+	{
+		listener.visitTerminal(node);
+		prune(node);
+	}
+
+	@Override
+	public void visitErrorNode(ErrorNode node)
+	{
+		listener.visitErrorNode(node);
+		prune(node);
+	}
+
+	/**
+	 * Removes a token that was just added to a rule outside of any row.
+	 */
+	private void prune(TerminalNode node)
+	{
+		ParseTree parent = node.getParent();
+		if (parent instanceof ParserRuleContext && !isInRow((ParserRuleContext) parent))
+			((ParserRuleContext) parent).removeLastChild();
+	}
+
+	private boolean isInRow(ParserRuleContext ctx)
+	{
+		for (RuleContext c = ctx; c != null; c = c.getParent())
+		{
+			// labelled alternatives are subclasses of their rule's context
+			for (Class<? extends ParserRuleContext> rowType : rowTypes)
+			{
+				if (rowType.isInstance(c))
+					return true;
+			}
+		}
+		return false;
+	}
+}
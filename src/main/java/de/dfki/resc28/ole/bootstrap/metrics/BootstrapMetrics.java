@@ -0,0 +1,371 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the timings and counters of a bootstrap: a latency histogram per
+ * stage (reading, lexing, parsing and walking the parts, serializing and
+ * writing their graphs, and every kind of graph store request), the parts,
+ * triples and bytes handled, the retried requests and the slowest parts.
+ *
+ * While a bootstrap runs, a progress line is printed periodically and the
+ * numbers are exposed as the MBean {@value #OBJECT_NAME}, with the count,
+ * mean, 99th percentile and maximum of each stage as attributes such as
+ * {@code parse.p99Millis}.
+ *
+ * There is one instance per process, which all threads record to.
+ */
+public class BootstrapMetrics implements DynamicMBean
+{
+    public static final String OBJECT_NAME = "de.dfki.resc28.ole.bootstrap:type=BootstrapMetrics";
+
+    private static final BootstrapMetrics INSTANCE = new BootstrapMetrics();
+
+    private static final class SlowPart implements Comparable<SlowPart>
+    {
+        final String fileName;
+        final long nanos;
+
+        SlowPart(String fileName, long nanos)
+        {
+            this.fileName = fileName;
+            this.nanos = nanos;
+        }
+
+        public int compareTo(SlowPart other)
+        {
+            return Long.compare(nanos, other.nanos);
+        }
+    }
+
+    private final ConcurrentMap<String, LatencyHistogram> stages = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+    private final LongAdder partsWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder triples = new LongAdder();
+    private final LongAdder bytesUploaded = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    // the fastest of the slowest parts first, so it is the one to drop
+    private final PriorityQueue<SlowPart> slowest = new PriorityQueue<SlowPart>();
+    private int slowestParts = 10;
+
+    private volatile long partsTotal = 0;
+    private volatile long startNanos = System.nanoTime();
+    private ScheduledExecutorService reporter = null;
+
+    private BootstrapMetrics()
+    {
+    }
+
+    public static BootstrapMetrics get()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts the clock, the periodic progress line and the MBean.
+     *
+     * @param partsTotal the number of parts the bootstrap is going to write
+     * @param progressSeconds seconds between two progress lines, 0 prints none
+     * @param slowestParts the number of slowest parts to keep
+     */
+    public synchronized void start(long partsTotal, int progressSeconds, int slowestParts)
+    {
+        this.partsTotal = partsTotal;
+        this.slowestParts = slowestParts;
+        this.startNanos = System.nanoTime();
+
+        if (progressSeconds > 0 && reporter == null)
+        {
+            reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "progress-reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reporter.scheduleAtFixedRate(new Runnable()
+            {
+                public void run()
+                {
+                    System.out.println(progress());
+                }
+            }, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        }
+
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(this, name);
+        }
+        catch (JMException e)
+        {
+            System.err.format("Could not register %s: %s%n", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the progress line; the MBean stays up until the process ends.
+     */
+    public synchronized void stop()
+    {
+        if (reporter != null)
+        {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    public LatencyHistogram stage(String name)
+    {
+        LatencyHistogram stage = stages.get(name);
+        if (stage == null)
+        {
+            LatencyHistogram created = new LatencyHistogram();
+            stage = stages.putIfAbsent(name, created);
+            if (stage == null)
+                stage = created;
+        }
+        return stage;
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} the stage started at
+     */
+    public void record(String stage, long startNanos)
+    {
+        stage(stage).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Counts a parsed part and keeps it if it is among the slowest.
+     */
+    public void parsed(String fileName, long bytes, long nanos)
+    {
+        bytesRead.add(bytes);
+        synchronized (slowest)
+        {
+            if (slowest.size() < slowestParts)
+                slowest.add(new SlowPart(fileName, nanos));
+            else if (!slowest.isEmpty() && slowest.peek().nanos < nanos)
+            {
+                slowest.poll();
+                slowest.add(new SlowPart(fileName, nanos));
+            }
+        }
+    }
+
+    public void written(long partTriples)
+    {
+        partsWritten.increment();
+        triples.add(partTriples);
+    }
+
+    public void uploaded(long bytes)
+    {
+        bytesUploaded.add(bytes);
+    }
+
+    public void retried()
+    {
+        retries.increment();
+    }
+
+    public long getPartsWritten()
+    {
+        return partsWritten.sum();
+    }
+
+    public double getPartsPerSecond()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? partsWritten.sum() / seconds : 0.0;
+    }
+
+    /**
+     * @return the estimated seconds until all parts are written, or -1 if
+     *         nothing has been written yet
+     */
+    public long getEtaSeconds()
+    {
+        double rate = getPartsPerSecond();
+        if (rate <= 0)
+            return -1;
+        return (long) Math.ceil(Math.max(0, partsTotal - partsWritten.sum()) / rate);
+    }
+
+    public String progress()
+    {
+        long eta = getEtaSeconds();
+        return String.format("Progress: %d/%d parts, %d triples (%.1f parts/s, %.1f MB read), ETA %s",
+                partsWritten.sum(), partsTotal, triples.sum(), getPartsPerSecond(), bytesRead.sum() / 1e6,
+                eta < 0 ? "unknown" : String.format("%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+    }
+
+    /**
+     * @return the final report, one line per stage and slow part
+     */
+    public String summary()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Wrote %d parts with %d triples in %.1f s (%.1f parts/s); read %.1f MB, uploaded %.1f MB, %d retries%n",
+                partsWritten.sum(), triples.sum(), (System.nanoTime() - startNanos) / 1e9, getPartsPerSecond(),
+                bytesRead.sum() / 1e6, bytesUploaded.sum() / 1e6, retries.sum()));
+
+        for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet())
+            summary.append(String.format("  %-24s %s%n", stage.getKey(), stage.getValue().report()));
+
+        List<SlowPart> parts;
+        synchronized (slowest)
+        {
+            parts = new ArrayList<SlowPart>(slowest);
+        }
+        Collections.sort(parts, Collections.reverseOrder());
+        if (!parts.isEmpty())
+            summary.append(String.format("Slowest parts to parse:%n"));
+        for (SlowPart part : parts)
+            summary.append(String.format("  %-24s %s%n", part.fileName, LatencyHistogram.format(part.nanos)));
+        return summary.toString();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException
+    {
+        if (attribute.equals("PartsTotal"))
+            return partsTotal;
+        if (attribute.equals("PartsWritten"))
+            return partsWritten.sum();
+        if (attribute.equals("PartsPerSecond"))
+            return getPartsPerSecond();
+        if (attribute.equals("EtaSeconds"))
+            return getEtaSeconds();
+        if (attribute.equals("Triples"))
+            return triples.sum();
+        if (attribute.equals("BytesRead"))
+            return bytesRead.sum();
+        if (attribute.equals("BytesUploaded"))
+            return bytesUploaded.sum();
+        if (attribute.equals("Retries"))
+            return retries.sum();
+
+        // <stage>.count, <stage>.meanMillis, <stage>.p99Millis or <stage>.maxMillis
+        int dot = attribute.lastIndexOf('.');
+        LatencyHistogram stage = dot > 0 ? stages.get(attribute.substring(0, dot)) : null;
+        if (stage != null)
+        {
+            String statistic = attribute.substring(dot + 1);
+            if (statistic.equals("count"))
+                return stage.getCount();
+            if (statistic.equals("meanMillis"))
+                return stage.getMeanNanos() / 1e6;
+            if (statistic.equals("p99Millis"))
+                return stage.getPercentileNanos(99) / 1e6;
+            if (statistic.equals("maxMillis"))
+                return stage.getMaxNanos() / 1e6;
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes)
+        {
+            try
+            {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            }
+            catch (AttributeNotFoundException e)
+            {
+                // left out, as the contract of DynamicMBean asks
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+    {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    /**
+     * Lists the stages known so far, so the attributes grow as the store
+     * sees new kinds of requests.
+     */
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        attributes.add(attribute("PartsTotal", "long", "parts to write"));
+        attributes.add(attribute("PartsWritten", "long", "parts written"));
+        attributes.add(attribute("PartsPerSecond", "double", "parts written per second"));
+        attributes.add(attribute("EtaSeconds", "long", "estimated seconds until all parts are written"));
+        attributes.add(attribute("Triples", "long", "triples written"));
+        attributes.add(attribute("BytesRead", "long", "bytes of part files parsed"));
+        attributes.add(attribute("BytesUploaded", "long", "bytes of batches uploaded"));
+        attributes.add(attribute("Retries", "long", "retried graph store requests"));
+
+        for (String stage : stages.keySet())
+        {
+            attributes.add(attribute(stage + ".count", "long", "calls of " + stage));
+            attributes.add(attribute(stage + ".meanMillis", "double", "mean milliseconds of " + stage));
+            attributes.add(attribute(stage + ".p99Millis", "double", "99th percentile milliseconds of " + stage));
+            attributes.add(attribute(stage + ".maxMillis", "double", "maximum milliseconds of " + stage));
+        }
+
+        return new MBeanInfo(getClass().getName(), "Timings and counters of the OLE bootstrap",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private static MBeanAttributeInfo attribute(String name, String type, String description)
+    {
+        return new MBeanAttributeInfo(name, type, description, true, false, false);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Counts durations in buckets that grow by a quarter of a power of two, so
+ * that any duration from a nanosecond to hours is kept in 256 counters.
+ *
+ * Percentiles are reported as the upper bound of their bucket and are
+ * therefore up to a quarter too high, which is plenty to tell a slow stage
+ * from a fast one. Recording does not lock, so the histogram can be shared
+ * by all threads.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator()
+    {
+        public long applyAsLong(long left, long right)
+        {
+            return Math.max(left, right);
+        }
+    }, 0);
+
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets.incrementAndGet(bucket(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos()
+    {
+        long n = count.sum();
+        return n > 0 ? totalNanos.sum() / (double) n : 0.0;
+    }
+
+    /**
+     * @param percentile e.g. 99.0
+     * @return the duration that the given percentage of the recorded
+     *         durations do not exceed
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        long n = 0;
+        for (int i = 0; i < buckets.length(); i++)
+            n += buckets.get(i);
+        if (n == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * @return count, mean, median, 99th percentile and maximum
+     */
+    public String report()
+    {
+        return String.format("%d calls, %.1f s total, mean %s, p50 %s, p99 %s, max %s",
+                getCount(), getTotalNanos() / (double) TimeUnit.SECONDS.toNanos(1),
+                format((long) getMeanNanos()), format(getPercentileNanos(50)), format(getPercentileNanos(99)), format(getMaxNanos()));
+    }
+
+    static String format(long nanos)
+    {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1000))
+            return String.format("%.1f us", nanos / 1e3);
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(1000))
+            return String.format("%.1f ms", nanos / 1e6);
+        return String.format("%.2f s", nanos / 1e9);
+    }
+
+    // the exponent of the duration and the two bits below its highest one
+    private static int bucket(long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS;
+        long sub = bucket % SUB_BUCKETS;
+        if (exponent >= 62)
+            return Long.MAX_VALUE;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.web.HttpException;
+
+import de.dfki.resc28.ole.bootstrap.metrics.BootstrapMetrics;
+
+/**
+ * Paces the requests sent to a graph store and adapts the pace to what the
+ * store can take (additive increase, multiplicative decrease).
+ *
+ * Every request that answers within the target latency raises the rate by
+ * a fixed step, a slow request lowers it by a quarter, and a server error
+ * (e.g. {@code 500 - Direct buffer memory}) or a failed connection halves
+ * it. Failed requests are retried after an exponential backoff with full
+ * jitter; client errors (4xx) are not retried. A thread that is interrupted
+ * while it waits for its turn or a retry gives up on the request.
+ */
+public class AdaptiveRateController
+{
+    private static final double INCREASE = 1.0;
+    private static final double SLOW_DECREASE = 0.75;
+    private static final double OVERLOAD_DECREASE = 0.5;
+    private static final long BACKOFF_BASE_MILLIS = 250;
+    private static final long BACKOFF_MAX_MILLIS = 30000;
+
+    private final double minRate;
+    private final double maxRate;
+    private final long targetLatencyNanos;
+    private final int maxRetries;
+    private final Random random = new Random();
+
+    private double rate;
+    private long nextSlot = System.nanoTime();
+
+    private long requests = 0;
+    private long retries = 0;
+    private long overloads = 0;
+    private long failures = 0;
+
+    /**
+     * @param initialRate requests per second to start with
+     * @param minRate requests per second the rate never drops below
+     * @param maxRate requests per second the rate never exceeds
+     * @param targetLatencyMillis latency above which a request counts as slow
+     * @param maxRetries retries of a failed request before giving up
+     */
+    public AdaptiveRateController(double initialRate, double minRate, double maxRate, long targetLatencyMillis, int maxRetries)
+    {
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rate = Math.max(minRate, Math.min(maxRate, initialRate));
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.maxRetries = maxRetries;
+    }
+
+    public void execute(Runnable request)
+    {
+        execute("request", request);
+    }
+
+    /**
+     * Runs the request at the current pace and retries it until it succeeds
+     * or the retries are exhausted, in which case the last failure is thrown.
+     * If the thread is interrupted while it waits, an
+     * {@link IllegalStateException} is thrown and its interrupt flag is kept.
+     *
+     * @param operation the kind of request, which the latency of every
+     *        attempt is recorded for as the stage {@code store.<operation>}
+     */
+    public void execute(String operation, Runnable request)
+    {
+        for (int attempt = 0; ; attempt++)
+        {
+            acquire();
+
+            long start = System.nanoTime();
+            try
+            {
+                request.run();
+                succeeded(record(operation, start));
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                record(operation, start);
+                boolean retryable = isRetryable(e);
+
+                // the attempt that ends a request overloaded the store just as much
+                if (retryable)
+                    overloaded();
+                if (!retryable || attempt >= maxRetries)
+                {
+                    gaveUp();
+                    throw e;
+                }
+
+                retried();
+                BootstrapMetrics.get().retried();
+                System.err.format("Graph store request failed, retrying [%d/%d]: %s%n", attempt + 1, maxRetries, e.getMessage());
+                try
+                {
+                    sleep(TimeUnit.MILLISECONDS.toNanos(backoffMillis(attempt)));
+                }
+                catch (IllegalStateException interrupted)
+                {
+                    gaveUp();
+                    throw interrupted;
+                }
+            }
+        }
+    }
+
+    public synchronized double getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * @return the requests that succeeded or were given up on, not counting
+     *         their retries
+     */
+    public synchronized long getRequests()
+    {
+        return requests;
+    }
+
+    public synchronized long getRetries()
+    {
+        return retries;
+    }
+
+    /**
+     * @return the attempts that failed with a server error or a failed
+     *         connection, including those that ended their request
+     */
+    public synchronized long getOverloads()
+    {
+        return overloads;
+    }
+
+    public synchronized String report()
+    {
+        return String.format("settled at %.1f requests/s after %d requests (%d retries, %d overloads, %d failed)", 
+                rate, requests, retries, overloads, failures);
+    }
+
+    // the latency of an attempt, recorded the same way whether it succeeded or not
+    private static long record(String operation, long start)
+    {
+        long latency = System.nanoTime() - start;
+        BootstrapMetrics.get().stage("store." + operation).record(latency);
+        return latency;
+    }
+
+    private void acquire()
+    {
+        long slot;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            slot = Math.max(now, nextSlot);
+            nextSlot = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+        sleep(slot - System.nanoTime());
+    }
+
+    private synchronized void succeeded(long latencyNanos)
+    {
+        requests++;
+        if (latencyNanos > targetLatencyNanos)
+            rate = Math.max(minRate, rate * SLOW_DECREASE);
+        else
+            rate = Math.min(maxRate, rate + INCREASE);
+    }
+
+    private synchronized void overloaded()
+    {
+        overloads++;
+        rate = Math.max(minRate, rate * OVERLOAD_DECREASE);
+
+        // do not let requests scheduled at the old rate through right away
+        nextSlot = Math.max(nextSlot, System.nanoTime()) + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    private synchronized void retried()
+    {
+        retries++;
+    }
+
+    private synchronized long backoffMillis(int attempt)
+    {
+        long ceiling = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt, 16));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    private static boolean isRetryable(RuntimeException e)
+    {
+        if (e instanceof HttpException)
+        {
+            int code = ((HttpException) e).getResponseCode();
+            return code <= 0 || code >= 500;
+        }
+        return false;
+    }
+
+    private synchronized void gaveUp()
+    {
+        requests++;
+        failures++;
+    }
+
+    private static void sleep(long nanos)
+    {
+        if (nanos <= 0)
+            return;
+
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (InterruptedException e)
+        {
+            // retrying would only spin, as every further sleep is interrupted at once
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to send a graph store request", e);
+        }
+    }
+}
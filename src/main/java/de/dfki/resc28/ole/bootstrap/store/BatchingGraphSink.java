@@ -0,0 +1,442 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.jena.atlas.io.AWriter;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.web.HttpOp;
+import org.apache.jena.riot.writer.WriterStreamRDFPlain;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import de.dfki.resc28.ole.bootstrap.metrics.BootstrapMetrics;
+
+/**
+ * Gathers many named graphs and sends them to the data endpoint of a Fuseki
+ * dataset as a single N-Quads request.
+ *
+ * A batch is sent as soon as it holds {@code maxGraphs} graphs or about
+ * {@code maxBytes} bytes of N-Quads, and on {@link #flush()}. Requests are
+ * paced by an {@link AdaptiveRateController}.
+ *
+ * A batch only keeps the models handed to the sink, which must not be
+ * changed afterwards; their quads are serialized straight onto the
+ * connection when the batch is sent, and again if it is retried, so the
+ * size of a batch is estimated rather than measured.
+ *
+ * Replacing, deleting and removing from graphs is collected into a single
+ * SPARQL Update request per batch, which is sent to the update endpoint
+ * before the batch's quads.
+ *
+ * Full batches are handed to a pool of uploaders, which keep up to
+ * {@code maxInFlight} batches in flight over kept-alive connections while
+ * the caller goes on filling the next batch; the caller only waits when all
+ * of them are busy. A batch is retried by the uploader that sends it, and
+ * a graph that is deleted or removed from while an earlier batch with its
+ * quads is in flight waits for that batch, so requests about the same
+ * graph reach the store in the order they were made. {@link #flush()}
+ * returns once every batch taken before it has been written, and throws
+ * the failure of any batch that could not be written.
+ *
+ * The quads can be sent gzip-compressed, which needs a store that accepts
+ * {@code Content-Encoding: gzip} requests.
+ */
+public class BatchingGraphSink implements GraphSink
+{
+    private static final ContentType NQUADS = ContentType.create(WebContent.contentTypeNQuads, "UTF-8");
+
+    private static final class Batch
+    {
+        final long sequence;
+        final List<String> graphs = new ArrayList<String>();
+        final List<Model> models = new ArrayList<Model>();
+        final Set<String> graphURIs = new HashSet<String>();
+        final UpdateBatch update = new UpdateBatch();
+        long bytes = 0;
+
+        Batch(long sequence)
+        {
+            this.sequence = sequence;
+        }
+
+        boolean isEmpty()
+        {
+            return graphs.isEmpty() && update.isEmpty();
+        }
+
+        // one writer per request, so that blank node labels stay distinct across its graphs
+        void writeQuads(OutputStream out)
+        {
+            AWriter writer = IO.wrapUTF8(out);
+            StreamRDF quads = new WriterStreamRDFPlain(writer);
+            quads.start();
+            for (int i = 0; i < graphs.size(); i++)
+            {
+                Node graph = NodeFactory.createURI(graphs.get(i));
+                ExtendedIterator<Triple> triples = models.get(i).getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+                try
+                {
+                    while (triples.hasNext())
+                        quads.quad(new Quad(graph, triples.next()));
+                }
+                finally
+                {
+                    triples.close();
+                }
+            }
+            quads.finish();
+            writer.flush();
+        }
+    }
+
+    private final String dataEndpoint;
+    private final String updateEndpoint;
+    private final int maxGraphs;
+    private final long maxBytes;
+    private final AdaptiveRateController rateController;
+    private final boolean gzip;
+    private final Semaphore inFlight;
+    private final ExecutorService uploaders;
+    private final PoolingClientConnectionManager connections;
+    private final HttpClient httpClient;
+
+    private Batch batch;
+    private long nextSequence = 0;
+    private long writtenUpTo = -1;
+    private final TreeSet<Long> writtenOutOfOrder = new TreeSet<Long>();
+    private final TreeMap<Long, Batch> unwritten = new TreeMap<Long, Batch>();
+    private RuntimeException failure = null;
+
+    /**
+     * @param maxInFlight the most batches sent at the same time
+     * @param gzip whether to compress the quads
+     */
+    public BatchingGraphSink(String dataEndpoint, String updateEndpoint, int maxGraphs, long maxBytes, int maxInFlight, boolean gzip,
+            AdaptiveRateController rateController)
+    {
+        this.dataEndpoint = dataEndpoint;
+        this.updateEndpoint = updateEndpoint;
+        this.maxGraphs = maxGraphs;
+        this.maxBytes = maxBytes;
+        this.rateController = rateController;
+        this.gzip = gzip;
+
+        final int uploaderCount = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(uploaderCount);
+        this.uploaders = Executors.newFixedThreadPool(uploaderCount, new ThreadFactory()
+        {
+            private final AtomicInteger next = new AtomicInteger();
+
+            public Thread newThread(Runnable task)
+            {
+                Thread thread = new Thread(task, "graph-uploader-" + next.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // a kept-alive connection for every uploader
+        this.connections = new PoolingClientConnectionManager();
+        connections.setMaxTotal(uploaderCount);
+        connections.setDefaultMaxPerRoute(uploaderCount);
+        this.httpClient = new DefaultHttpClient(connections);
+
+        newBatch();
+    }
+
+    @Override
+    public void createNamedGraph(String graphURI, Model model)
+    {
+        // the graph may be left over from an earlier bootstrap
+        replaceNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public void addToNamedGraph(String graphURI, Model model)
+    {
+        Batch full = null;
+
+        synchronized (this)
+        {
+            batch.graphs.add(graphURI);
+            batch.models.add(model);
+            batch.graphURIs.add(graphURI);
+            batch.bytes += estimatedSize(graphURI, model);
+
+            if (batch.graphs.size() >= maxGraphs || batch.bytes >= maxBytes)
+                full = take();
+        }
+
+        if (full != null)
+            send(full);
+    }
+
+    @Override
+    public void replaceNamedGraph(String graphURI, Model model)
+    {
+        deleteNamedGraph(graphURI);
+        addToNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public void deleteNamedGraph(String graphURI)
+    {
+        // the update is sent ahead of the quads, so it must not overtake quads of the same graph
+        if (isInBatch(graphURI))
+            flush();
+
+        synchronized (this)
+        {
+            batch.update.drop(graphURI);
+        }
+    }
+
+    @Override
+    public void removeFromNamedGraph(String graphURI, Model model)
+    {
+        if (isInBatch(graphURI))
+            flush();
+
+        synchronized (this)
+        {
+            batch.update.deleteData(graphURI, model);
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        Batch last;
+        long sequence;
+
+        synchronized (this)
+        {
+            last = take();
+            sequence = batch.sequence - 1;
+        }
+
+        if (last != null)
+            send(last);
+
+        awaitWritten(sequence);
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            uploaders.shutdownNow();
+            connections.shutdown();
+        }
+    }
+
+    // whether the graph has quads that are not written yet
+    private synchronized boolean isInBatch(String graphURI)
+    {
+        if (batch.graphURIs.contains(graphURI))
+            return true;
+        for (Batch sending : unwritten.values())
+        {
+            if (sending.graphURIs.contains(graphURI))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes the current batch for sending and starts a new one.
+     *
+     * @return the batch, or {@code null} if there is nothing to send
+     */
+    private Batch take()
+    {
+        if (batch.isEmpty())
+            return null;
+
+        Batch taken = batch;
+        unwritten.put(taken.sequence, taken);
+        newBatch();
+        return taken;
+    }
+
+    /**
+     * Hands the batch to an uploader, once one is free.
+     */
+    private void send(final Batch batch)
+    {
+        try
+        {
+            inFlight.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            written(batch.sequence, new IllegalStateException("Interrupted while waiting for an uploader", e));
+            throw failure();
+        }
+
+        uploaders.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    upload(batch);
+                }
+                finally
+                {
+                    inFlight.release();
+                }
+            }
+        });
+
+        // report a lost batch to the caller as soon as possible
+        RuntimeException lost = failure();
+        if (lost != null)
+            throw lost;
+    }
+
+    private void upload(final Batch batch)
+    {
+        try
+        {
+            if (!batch.update.isEmpty())
+            {
+                rateController.execute("update", new Runnable()
+                {
+                    public void run()
+                    {
+                        batch.update.execute(updateEndpoint, httpClient, gzip);
+                    }
+                });
+            }
+
+            if (!batch.graphs.isEmpty())
+            {
+                final StreamingEntity quads = new StreamingEntity(NQUADS, gzip)
+                {
+                    protected void write(OutputStream out)
+                    {
+                        batch.writeQuads(out);
+                    }
+                };
+                rateController.execute("upload", new Runnable()
+                {
+                    public void run()
+                    {
+                        HttpOp.execHttpPost(dataEndpoint, quads, httpClient, null, null);
+                    }
+                });
+                BootstrapMetrics.get().uploaded(quads.getBytesWritten());
+            }
+
+            written(batch.sequence, null);
+        }
+        catch (RuntimeException e)
+        {
+            written(batch.sequence, e);
+        }
+    }
+
+    private synchronized RuntimeException failure()
+    {
+        return failure;
+    }
+
+    private synchronized void written(long sequence, RuntimeException e)
+    {
+        if (e != null && failure == null)
+            failure = e;
+
+        unwritten.remove(sequence);
+        writtenOutOfOrder.add(sequence);
+        while (!writtenOutOfOrder.isEmpty() && writtenOutOfOrder.first() == writtenUpTo + 1)
+            writtenUpTo = writtenOutOfOrder.pollFirst();
+
+        notifyAll();
+    }
+
+    private synchronized void awaitWritten(long sequence)
+    {
+        try
+        {
+            while (writtenUpTo < sequence && failure == null)
+                wait();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batches to be written", e);
+        }
+
+        // once a batch is lost, the store no longer holds everything that was flushed
+        if (failure != null)
+            throw failure;
+    }
+
+    private void newBatch()
+    {
+        batch = new Batch(nextSequence++);
+    }
+
+    // about the length of the graph's quads in N-Quads, without writing them
+    private static long estimatedSize(String graphURI, Model model)
+    {
+        long size = 0;
+        ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (triples.hasNext())
+            {
+                Triple triple = triples.next();
+                size += graphURI.length() + estimatedSize(triple.getSubject()) + estimatedSize(triple.getPredicate())
+                        + estimatedSize(triple.getObject()) + 8;
+            }
+        }
+        finally
+        {
+            triples.close();
+        }
+        return size;
+    }
+
+    private static int estimatedSize(Node node)
+    {
+        if (node.isURI())
+            return node.getURI().length() + 2;
+        if (node.isLiteral())
+            return node.getLiteralLexicalForm().length() + node.getLiteralDatatypeURI().length() + 6;
+        return 24;
+    }
+}
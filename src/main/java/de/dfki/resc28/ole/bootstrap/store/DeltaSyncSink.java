@@ -0,0 +1,347 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.DCTerms;
+
+/**
+ * Synchronises named graphs with a SPARQL endpoint, sending only the triples
+ * that differ from what the store already holds.
+ *
+ * Graphs are gathered until {@code maxGraphs} are pending or the sink is
+ * flushed. The store's copies of the pending replaced graphs are then
+ * fetched with a single query, and the differences are sent as a single
+ * SPARQL Update request of {@code DELETE DATA} and {@code INSERT DATA}
+ * operations.
+ *
+ * A replaced graph ends up exactly as given, except that the date a
+ * resource was created ({@code dcterms:created}) is kept as the store has
+ * it, rather than changing with every run. An added graph is inserted
+ * without looking at the store, as inserting triples it holds already has
+ * no effect, so adding to a graph in chunks does not fetch the graph again
+ * for every chunk.
+ *
+ * Blank nodes can not be matched against the store's copy, so a graph that
+ * contains blank nodes is left alone if it is isomorphic to the store's
+ * copy, and otherwise dropped and inserted as a whole. This includes an
+ * added graph with blank nodes, as inserting it again would duplicate them.
+ */
+public class DeltaSyncSink implements GraphSink
+{
+    private static final Node CREATED = DCTerms.created.asNode();
+
+    private static final class Pending
+    {
+        final Model model = ModelFactory.createDefaultModel();
+        boolean replace;
+
+        Pending(boolean replace)
+        {
+            this.replace = replace;
+        }
+    }
+
+    private final String queryEndpoint;
+    private final String updateEndpoint;
+    private final int maxGraphs;
+    private final AdaptiveRateController rateController;
+
+    private Map<String, Pending> pending = new LinkedHashMap<String, Pending>();
+    private UpdateBatch pendingUpdate = new UpdateBatch();
+
+    private long graphs = 0;
+    private long unchanged = 0;
+    private long rewritten = 0;
+    private long deleted = 0;
+    private long inserted = 0;
+
+    public DeltaSyncSink(String queryEndpoint, String updateEndpoint, int maxGraphs, AdaptiveRateController rateController)
+    {
+        this.queryEndpoint = queryEndpoint;
+        this.updateEndpoint = updateEndpoint;
+        this.maxGraphs = maxGraphs;
+        this.rateController = rateController;
+    }
+
+    @Override
+    public synchronized void createNamedGraph(String graphURI, Model model)
+    {
+        replaceNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public synchronized void addToNamedGraph(String graphURI, Model model)
+    {
+        Pending graph = pending.get(graphURI);
+        if (graph == null)
+        {
+            graph = new Pending(false);
+            pending.put(graphURI, graph);
+        }
+        graph.model.add(model);
+
+        if (pending.size() >= maxGraphs)
+            flush();
+    }
+
+    @Override
+    public synchronized void replaceNamedGraph(String graphURI, Model model)
+    {
+        Pending graph = new Pending(true);
+        graph.model.add(model);
+        pending.put(graphURI, graph);
+
+        if (pending.size() >= maxGraphs)
+            flush();
+    }
+
+    @Override
+    public synchronized void deleteNamedGraph(String graphURI)
+    {
+        // the pending graph would be compared with the store's copy before it is dropped
+        pending.remove(graphURI);
+        pendingUpdate.drop(graphURI);
+    }
+
+    @Override
+    public synchronized void removeFromNamedGraph(String graphURI, Model model)
+    {
+        // removals are sent before the differences are computed, so pending additions must go first
+        if (pending.containsKey(graphURI))
+            flush();
+        pendingUpdate.deleteData(graphURI, model);
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        final UpdateBatch update = pendingUpdate;
+        pendingUpdate = new UpdateBatch();
+        if (!update.isEmpty())
+        {
+            rateController.execute("update", new Runnable()
+            {
+                public void run()
+                {
+                    update.execute(updateEndpoint);
+                }
+            });
+        }
+
+        if (pending.isEmpty())
+            return;
+
+        Map<String, Pending> batch = pending;
+        pending = new LinkedHashMap<String, Pending>();
+
+        // only the graphs that are compared with the store's copy are fetched
+        Set<String> compared = new LinkedHashSet<String>();
+        for (Map.Entry<String, Pending> entry : batch.entrySet())
+        {
+            if (entry.getValue().replace || hasBlankNodes(entry.getValue().model.getGraph()))
+                compared.add(entry.getKey());
+        }
+        Map<String, Graph> stored = compared.isEmpty() ? new HashMap<String, Graph>() : fetch(compared);
+
+        final UpdateBatch delta = new UpdateBatch();
+        QuadDataAcc deletes = new QuadDataAcc();
+        QuadDataAcc inserts = new QuadDataAcc();
+
+        for (Map.Entry<String, Pending> entry : batch.entrySet())
+        {
+            Node graphNode = NodeFactory.createURI(entry.getKey());
+            Graph local = entry.getValue().model.getGraph();
+            graphs++;
+
+            if (!compared.contains(entry.getKey()))
+            {
+                inserted += addQuads(inserts, graphNode, local, null);
+                continue;
+            }
+
+            Graph store = stored.get(entry.getKey());
+            if (store == null)
+                store = GraphFactory.createGraphMem();
+            keepCreated(local, store);
+
+            if (hasBlankNodes(local) || hasBlankNodes(store))
+            {
+                if (local.isIsomorphicWith(store))
+                {
+                    unchanged++;
+                    continue;
+                }
+                delta.drop(entry.getKey());
+                rewritten++;
+                inserted += addQuads(inserts, graphNode, local, null);
+                continue;
+            }
+
+            long removedTriples = addQuads(deletes, graphNode, store, local);
+            long addedTriples = addQuads(inserts, graphNode, local, store);
+            if (removedTriples + addedTriples == 0)
+                unchanged++;
+            deleted += removedTriples;
+            inserted += addedTriples;
+        }
+
+        // drops go first, then deletions, so that no insertion is undone
+        if (!deletes.getQuads().isEmpty())
+            delta.deleteData(deletes);
+        if (!inserts.getQuads().isEmpty())
+            delta.insertData(inserts);
+
+        if (!delta.isEmpty())
+        {
+            rateController.execute("update", new Runnable()
+            {
+                public void run()
+                {
+                    delta.execute(updateEndpoint);
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        flush();
+        System.out.format("Synchronised %d graphs: %d unchanged, %d rewritten as a whole, %d triples deleted, %d triples inserted%n", graphs, unchanged, rewritten, deleted, inserted);
+    }
+
+    /**
+     * Fetches the store's copies of the given graphs with a single query.
+     */
+    private Map<String, Graph> fetch(Iterable<String> graphURIs)
+    {
+        StringBuilder query = new StringBuilder("SELECT ?g ?s ?p ?o WHERE { VALUES ?g {");
+        for (String graphURI : graphURIs)
+            query.append(' ').append(NodeFmtLib.str(NodeFactory.createURI(graphURI)));
+        query.append(" } GRAPH ?g { ?s ?p ?o } }");
+
+        final String queryString = query.toString();
+        final Map<String, Graph> stored = new HashMap<String, Graph>();
+        rateController.execute("select", new Runnable()
+        {
+            public void run()
+            {
+                // a retried query starts over
+                stored.clear();
+
+                QueryExecution execution = QueryExecutionFactory.sparqlService(queryEndpoint, queryString);
+                try
+                {
+                    ResultSet results = execution.execSelect();
+                    while (results.hasNext())
+                    {
+                        QuerySolution row = results.next();
+                        String graphURI = row.getResource("g").getURI();
+                        Graph graph = stored.get(graphURI);
+                        if (graph == null)
+                        {
+                            graph = GraphFactory.createGraphMem();
+                            stored.put(graphURI, graph);
+                        }
+                        graph.add(Triple.create(row.get("s").asNode(), row.get("p").asNode(), row.get("o").asNode()));
+                    }
+                }
+                finally
+                {
+                    execution.close();
+                }
+            }
+        });
+        return stored;
+    }
+
+    /**
+     * Replaces the creation dates of the resources in the local graph with
+     * those the store holds for them.
+     */
+    private static void keepCreated(Graph local, Graph store)
+    {
+        List<Triple> kept = store.find(Node.ANY, CREATED, Node.ANY).toList();
+        for (Triple triple : kept)
+        {
+            if (local.contains(triple.getSubject(), CREATED, Node.ANY))
+            {
+                local.remove(triple.getSubject(), CREATED, Node.ANY);
+                local.add(triple);
+            }
+        }
+    }
+
+    /**
+     * Adds the triples of {@code from} that are not in {@code except} as
+     * quads of the given graph.
+     *
+     * @return the number of quads added
+     */
+    private static long addQuads(QuadDataAcc quads, Node graphNode, Graph from, Graph except)
+    {
+        long added = 0;
+        ExtendedIterator<Triple> triples = from.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (triples.hasNext())
+            {
+                Triple triple = triples.next();
+                if (except == null || !except.contains(triple))
+                {
+                    quads.addQuad(new Quad(graphNode, triple));
+                    added++;
+                }
+            }
+        }
+        finally
+        {
+            triples.close();
+        }
+        return added;
+    }
+
+    private static boolean hasBlankNodes(Graph graph)
+    {
+        ExtendedIterator<Triple> triples = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (triples.hasNext())
+            {
+                Triple triple = triples.next();
+                if (triple.getSubject().isBlank() || triple.getObject().isBlank())
+                    return true;
+            }
+            return false;
+        }
+        finally
+        {
+            triples.close();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Receives the named graphs built by the listeners, which only ever add to
+ * the graphs of the part they walk.
+ */
+public interface GraphCollector
+{
+    public void addToNamedGraph(String graphURI, Model model);
+}
@@ -0,0 +1,38 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Destination for the named graphs produced while bootstrapping.
+ *
+ * A sink may hold on to the models handed to it until {@link #flush()}, so
+ * they must not be changed afterwards.
+ */
+public interface GraphSink extends GraphCollector
+{
+    public void createNamedGraph(String graphURI, Model model);
+
+    public void replaceNamedGraph(String graphURI, Model model);
+
+    public void deleteNamedGraph(String graphURI);
+
+    /**
+     * Removes the statements of the given model from a named graph.
+     */
+    public void removeFromNamedGraph(String graphURI, Model model);
+
+    /**
+     * Makes sure everything handed to this sink so far has been written.
+     */
+    public void flush();
+
+    /**
+     * Flushes this sink and releases the resources it holds.
+     */
+    public void close();
+}
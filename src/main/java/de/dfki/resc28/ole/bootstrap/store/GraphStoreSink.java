@@ -0,0 +1,103 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import org.apache.jena.rdf.model.Model;
+
+import de.dfki.resc28.igraphstore.IGraphStore;
+
+/**
+ * Writes named graphs to an {@link IGraphStore}, one request per graph,
+ * paced by an {@link AdaptiveRateController}.
+ */
+public class GraphStoreSink implements GraphSink
+{
+    private final IGraphStore graphStore;
+    private final String updateEndpoint;
+    private final AdaptiveRateController rateController;
+
+    public GraphStoreSink(IGraphStore graphStore, String updateEndpoint, AdaptiveRateController rateController)
+    {
+        this.graphStore = graphStore;
+        this.updateEndpoint = updateEndpoint;
+        this.rateController = rateController;
+    }
+
+    @Override
+    public void createNamedGraph(final String graphURI, final Model model)
+    {
+        rateController.execute("createNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                graphStore.createNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void addToNamedGraph(final String graphURI, final Model model)
+    {
+        // paced to prevent org.apache.jena.atlas.web.HttpException: 500 - Direct buffer memory
+        rateController.execute("addToNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                graphStore.addToNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void replaceNamedGraph(final String graphURI, final Model model)
+    {
+        rateController.execute("replaceNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                graphStore.replaceNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void deleteNamedGraph(final String graphURI)
+    {
+        rateController.execute("deleteNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                graphStore.deleteNamedGraph(graphURI);
+            }
+        });
+    }
+
+    @Override
+    public void removeFromNamedGraph(String graphURI, Model model)
+    {
+        final UpdateBatch update = new UpdateBatch();
+        update.deleteData(graphURI, model);
+        rateController.execute("update", new Runnable()
+        {
+            public void run()
+            {
+                update.execute(updateEndpoint);
+            }
+        });
+    }
+
+    @Override
+    public void flush()
+    {
+        // every graph is written immediately
+    }
+
+    @Override
+    public void close()
+    {
+        flush();
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.update.UpdateAction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP server in the bootstrapper's process that answers the requests
+ * the Fuseki backend sends, from an in-memory dataset, as a store that
+ * behaves as a {@link StoreSimulation} says.
+ *
+ * The stub serves a dataset at {@code /ole}, like {@code localhost:3030/ole}:
+ * <ul>
+ * <li>{@code /ole/data}: the graph store protocol (GET, HEAD, PUT, POST and
+ * DELETE a graph given by {@code ?graph=} or {@code ?default}), and a POST
+ * of N-Quads without a graph, as the batched upload sends;</li>
+ * <li>{@code /ole/update}: SPARQL Update, in the body or as a form field;</li>
+ * <li>{@code /ole/query} and {@code /ole/sparql}: SPARQL queries, with
+ * results as JSON.</li>
+ * </ul>
+ * Request bodies may be gzip-compressed. A failure injected by the
+ * simulation is answered with a {@code 500} whose body is
+ * {@code Direct buffer memory}, before the request has any effect.
+ */
+public class GraphStoreStub
+{
+    public static final String DATASET = "/ole";
+
+    private final DatasetGraph dataset = DatasetGraphFactory.create();
+    private final StoreSimulation simulation;
+    private final HttpServer server;
+    private final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        private final AtomicInteger next = new AtomicInteger();
+
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, "graph-store-stub-" + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Starts the stub on the loopback interface.
+     *
+     * @param port the port to listen on, 0 for any free port
+     */
+    public GraphStoreStub(int port, StoreSimulation simulation) throws IOException
+    {
+        this.simulation = simulation;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        server.createContext(DATASET + "/data", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                serve(exchange, "data");
+            }
+        });
+        server.createContext(DATASET + "/update", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                serve(exchange, "update");
+            }
+        });
+        HttpHandler query = new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                serve(exchange, "query");
+            }
+        };
+        server.createContext(DATASET + "/query", query);
+        server.createContext(DATASET + "/sparql", query);
+
+        server.setExecutor(workers);
+        server.start();
+    }
+
+    /**
+     * @return the URL of the dataset, e.g. {@code http://127.0.0.1:3030/ole}
+     */
+    public String getURL()
+    {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + DATASET;
+    }
+
+    public String getDataEndpoint()
+    {
+        return getURL() + "/data";
+    }
+
+    public String getQueryEndpoint()
+    {
+        return getURL() + "/query";
+    }
+
+    public String getUpdateEndpoint()
+    {
+        return getURL() + "/update";
+    }
+
+    /**
+     * @return the dataset the stub serves, which is only consistent while
+     *         no requests are served
+     */
+    public DatasetGraph getDataset()
+    {
+        return dataset;
+    }
+
+    /**
+     * Stops serving; the server's dispatcher thread is not a daemon, so a
+     * process that started the stub does not exit before it is stopped.
+     */
+    public void stop()
+    {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange, String endpoint) throws IOException
+    {
+        try
+        {
+            byte[] sent = readBody(exchange.getRequestBody());
+            boolean gzip = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            byte[] body = gzip ? readBody(new GZIPInputStream(new ByteArrayInputStream(sent))) : sent;
+            String method = exchange.getRequestMethod();
+            Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            String contentType = contentType(exchange);
+            if ("application/x-www-form-urlencoded".equals(contentType))
+                parameters.putAll(parameters(new String(body, StandardCharsets.UTF_8)));
+
+            // the simulated request takes its time outside of the dataset's lock
+            simulation.request(endpoint + "." + method, sent.length);
+
+            if (endpoint.equals("data"))
+                data(exchange, method, parameters, contentType, body);
+            else if (endpoint.equals("update"))
+                update(exchange, parameters, contentType, body);
+            else
+                query(exchange, parameters, contentType, body);
+        }
+        catch (HttpException e)
+        {
+            respond(exchange, e.getResponseCode(), "text/plain", e.getResponse());
+        }
+        catch (RuntimeException e)
+        {
+            respond(exchange, 400, "text/plain", String.valueOf(e.getMessage()));
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private void data(HttpExchange exchange, String method, Map<String, String> parameters, String contentType, byte[] body)
+            throws IOException
+    {
+        String graphURI = parameters.get("graph");
+        boolean defaultGraph = parameters.containsKey("default");
+
+        if (graphURI == null && !defaultGraph)
+        {
+            // a dataset upload, e.g. a batch of N-Quads
+            if (!method.equals("POST"))
+            {
+                respond(exchange, 405, "text/plain", "Only POST without a graph");
+                return;
+            }
+            DatasetGraph upload = DatasetGraphFactory.create();
+            RDFDataMgr.read(upload, new ByteArrayInputStream(body), lang(contentType, Lang.NQUADS));
+            synchronized (dataset)
+            {
+                GraphUtil.addInto(dataset.getDefaultGraph(), upload.getDefaultGraph());
+                for (Iterator<Node> names = upload.listGraphNodes(); names.hasNext();)
+                {
+                    Node name = names.next();
+                    GraphUtil.addInto(graph(name.getURI(), true), upload.getGraph(name));
+                }
+            }
+            respond(exchange, 204);
+            return;
+        }
+
+        if (method.equals("GET") || method.equals("HEAD"))
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            synchronized (dataset)
+            {
+                Graph graph = defaultGraph ? dataset.getDefaultGraph() : graph(graphURI, false);
+                if (graph == null)
+                {
+                    respond(exchange, 404, "text/plain", "No such graph: " + graphURI);
+                    return;
+                }
+                RDFDataMgr.write(out, graph, Lang.NTRIPLES);
+            }
+            if (method.equals("HEAD"))
+            {
+                exchange.getResponseHeaders().set("Content-Type", "application/n-triples");
+                exchange.sendResponseHeaders(200, -1);
+            }
+            else
+            {
+                respond(exchange, 200, "application/n-triples", out.toByteArray());
+            }
+            return;
+        }
+
+        if (method.equals("DELETE"))
+        {
+            boolean existed;
+            synchronized (dataset)
+            {
+                if (defaultGraph)
+                {
+                    existed = true;
+                    dataset.getDefaultGraph().clear();
+                }
+                else
+                {
+                    existed = dataset.containsGraph(NodeFactory.createURI(graphURI));
+                    dataset.removeGraph(NodeFactory.createURI(graphURI));
+                }
+            }
+            respond(exchange, existed ? 204 : 404);
+            return;
+        }
+
+        if (method.equals("PUT") || method.equals("POST"))
+        {
+            Graph content = GraphFactory.createGraphMem();
+            RDFDataMgr.read(content, new ByteArrayInputStream(body), lang(contentType, Lang.TURTLE));
+            synchronized (dataset)
+            {
+                Graph graph = defaultGraph ? dataset.getDefaultGraph() : graph(graphURI, true);
+                if (method.equals("PUT"))
+                    graph.clear();
+                GraphUtil.addInto(graph, content);
+            }
+            respond(exchange, method.equals("PUT") ? 201 : 204);
+            return;
+        }
+
+        respond(exchange, 405, "text/plain", "Method not allowed: " + method);
+    }
+
+    private void update(HttpExchange exchange, Map<String, String> parameters, String contentType, byte[] body) throws IOException
+    {
+        String update = "application/x-www-form-urlencoded".equals(contentType) ? parameters.get("update")
+                : new String(body, StandardCharsets.UTF_8);
+        if (update == null)
+        {
+            respond(exchange, 400, "text/plain", "No update given");
+            return;
+        }
+
+        synchronized (dataset)
+        {
+            UpdateAction.parseExecute(update, dataset);
+        }
+        respond(exchange, 204);
+    }
+
+    private void query(HttpExchange exchange, Map<String, String> parameters, String contentType, byte[] body) throws IOException
+    {
+        String query = "application/sparql-query".equals(contentType) ? new String(body, StandardCharsets.UTF_8) : parameters.get("query");
+        if (query == null)
+        {
+            respond(exchange, 400, "text/plain", "No query given");
+            return;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        synchronized (dataset)
+        {
+            QueryExecution execution = QueryExecutionFactory.create(query, DatasetFactory.wrap(dataset));
+            try
+            {
+                if (execution.getQuery().isAskType())
+                    ResultSetFormatter.outputAsJSON(out, execution.execAsk());
+                else
+                    ResultSetFormatter.outputAsJSON(out, execution.execSelect());
+            }
+            finally
+            {
+                execution.close();
+            }
+        }
+        respond(exchange, 200, "application/sparql-results+json", out.toByteArray());
+    }
+
+    // the named graph, created on demand or null if it does not exist
+    private Graph graph(String graphURI, boolean create)
+    {
+        Node name = NodeFactory.createURI(graphURI);
+        if (!dataset.containsGraph(name))
+        {
+            if (!create)
+                return null;
+            dataset.addGraph(name, GraphFactory.createGraphMem());
+        }
+        return dataset.getGraph(name);
+    }
+
+    private static Lang lang(String contentType, Lang fallback)
+    {
+        Lang lang = contentType == null ? null : RDFLanguages.contentTypeToLang(contentType);
+        return lang == null ? fallback : lang;
+    }
+
+    private static String contentType(HttpExchange exchange)
+    {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null)
+            return null;
+        int parameters = contentType.indexOf(';');
+        return (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, String> parameters(String query) throws UnsupportedEncodingException
+    {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null || query.isEmpty())
+            return parameters;
+
+        for (String parameter : query.split("&"))
+        {
+            int equals = parameter.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? parameter : parameter.substring(0, equals), "UTF-8");
+            String value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+            parameters.put(name, value);
+        }
+        return parameters;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+            body.write(buffer, 0, read);
+        return body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException
+    {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException
+    {
+        respond(exchange, status, contentType, (body == null ? "" : body).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (body.length == 0)
+        {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.flush();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+/**
+ * Keeps the named graphs in memory, in place of a graph store, e.g. for a dry
+ * run that only measures parsing or for benchmarks that must run offline.
+ */
+public class InMemoryGraphSink implements GraphSink
+{
+    private final Map<String, Graph> graphs = new HashMap<String, Graph>();
+
+    @Override
+    public void createNamedGraph(String graphURI, Model model)
+    {
+        replaceNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public synchronized void addToNamedGraph(String graphURI, Model model)
+    {
+        Graph graph = graphs.get(graphURI);
+        if (graph == null)
+        {
+            graph = GraphFactory.createGraphMem();
+            graphs.put(graphURI, graph);
+        }
+        GraphUtil.addInto(graph, model.getGraph());
+    }
+
+    @Override
+    public synchronized void replaceNamedGraph(String graphURI, Model model)
+    {
+        graphs.remove(graphURI);
+        addToNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public synchronized void deleteNamedGraph(String graphURI)
+    {
+        graphs.remove(graphURI);
+    }
+
+    @Override
+    public synchronized void removeFromNamedGraph(String graphURI, Model model)
+    {
+        Graph graph = graphs.get(graphURI);
+        if (graph != null)
+            GraphUtil.deleteFrom(graph, model.getGraph());
+    }
+
+    /**
+     * @return the named graph, or {@code null} if there is none
+     */
+    public synchronized Graph getNamedGraph(String graphURI)
+    {
+        return graphs.get(graphURI);
+    }
+
+    public synchronized int size()
+    {
+        return graphs.size();
+    }
+
+    /**
+     * @return the number of triples in all named graphs
+     */
+    public synchronized long triples()
+    {
+        long triples = 0;
+        for (Graph graph : graphs.values())
+            triples += graph.size();
+        return triples;
+    }
+
+    @Override
+    public void flush()
+    {
+        // every graph is written immediately
+    }
+
+    @Override
+    public void close()
+    {
+        // the graphs stay available until the sink is dropped
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jena.atlas.io.AWriter;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.writer.WriterStreamRDFPlain;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import de.dfki.resc28.ole.bootstrap.metrics.BootstrapMetrics;
+
+/**
+ * Streams the quads of every named graph straight into an N-Quads file,
+ * gzip'd if the file name ends with {@code .gz}. Nothing is kept in memory
+ * besides the output buffers, so the catalog dump is produced at disk speed
+ * and can be bulk-loaded into a store later.
+ *
+ * A dump is always written from scratch, which is why the bootstrap ignores
+ * a configured manifest or journal for it; nothing is ever deleted or removed
+ * from it.
+ */
+public class NQuadsFileSink implements GraphSink
+{
+    private final OutputStream stream;
+    private final AWriter out;
+    private final StreamRDF quads;
+
+    public NQuadsFileSink(File file) throws IOException
+    {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        this.stream = file.getName().endsWith(".gz") ? new GZIPOutputStream(os, 1 << 16) : os;
+        this.out = IO.wrapUTF8(stream);
+        this.quads = new WriterStreamRDFPlain(out);
+        this.quads.start();
+    }
+
+    @Override
+    public void createNamedGraph(String graphURI, Model model)
+    {
+        addToNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public synchronized void addToNamedGraph(String graphURI, Model model)
+    {
+        long start = System.nanoTime();
+        Node graph = NodeFactory.createURI(graphURI);
+        ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (triples.hasNext())
+                quads.quad(new Quad(graph, triples.next()));
+        }
+        finally
+        {
+            triples.close();
+            BootstrapMetrics.get().record("serialize", start);
+        }
+    }
+
+    @Override
+    public void replaceNamedGraph(String graphURI, Model model)
+    {
+        // a dump is always written from scratch
+        addToNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public void deleteNamedGraph(String graphURI)
+    {
+        throw new UnsupportedOperationException("Cannot delete graphs from an N-Quads dump");
+    }
+
+    @Override
+    public void removeFromNamedGraph(String graphURI, Model model)
+    {
+        throw new UnsupportedOperationException("Cannot remove statements from an N-Quads dump");
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        quads.finish();
+        out.close();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.OutputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * Writes the named graphs into memory, as if they were sent to a graph store
+ * that behaves as a {@link StoreSimulation} says, one request per graph,
+ * paced by an {@link AdaptiveRateController} like a {@link GraphStoreSink}.
+ *
+ * A failed request leaves the graphs untouched, so a retried request has
+ * the same effect as one that succeeds right away. This makes it possible
+ * to measure pacing, retries and parallel writers offline and to repeat the
+ * measurement with the same store.
+ */
+public class SimulatedGraphSink implements GraphSink
+{
+    private final InMemoryGraphSink graphs = new InMemoryGraphSink();
+    private final StoreSimulation simulation;
+    private final AdaptiveRateController rateController;
+
+    public SimulatedGraphSink(StoreSimulation simulation, AdaptiveRateController rateController)
+    {
+        this.simulation = simulation;
+        this.rateController = rateController;
+    }
+
+    @Override
+    public void createNamedGraph(final String graphURI, final Model model)
+    {
+        final long bytes = size(model);
+        rateController.execute("createNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                simulation.request("createNamedGraph", bytes);
+                graphs.createNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void addToNamedGraph(final String graphURI, final Model model)
+    {
+        final long bytes = size(model);
+        rateController.execute("addToNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                simulation.request("addToNamedGraph", bytes);
+                graphs.addToNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void replaceNamedGraph(final String graphURI, final Model model)
+    {
+        final long bytes = size(model);
+        rateController.execute("replaceNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                simulation.request("replaceNamedGraph", bytes);
+                graphs.replaceNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void deleteNamedGraph(final String graphURI)
+    {
+        rateController.execute("deleteNamedGraph", new Runnable()
+        {
+            public void run()
+            {
+                simulation.request("deleteNamedGraph", 0);
+                graphs.deleteNamedGraph(graphURI);
+            }
+        });
+    }
+
+    @Override
+    public void removeFromNamedGraph(final String graphURI, final Model model)
+    {
+        final long bytes = size(model);
+        rateController.execute("update", new Runnable()
+        {
+            public void run()
+            {
+                simulation.request("update", bytes);
+                graphs.removeFromNamedGraph(graphURI, model);
+            }
+        });
+    }
+
+    /**
+     * @return the graphs written so far
+     */
+    public InMemoryGraphSink getGraphs()
+    {
+        return graphs;
+    }
+
+    @Override
+    public void flush()
+    {
+        // every graph is written immediately
+    }
+
+    @Override
+    public void close()
+    {
+        flush();
+    }
+
+    // the size of the model as N-Triples, about what a store is sent for it
+    private static long size(Model model)
+    {
+        final long[] bytes = new long[1];
+        RDFDataMgr.write(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                bytes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+            {
+                bytes[0] += len;
+            }
+        }, model, Lang.NTRIPLES);
+        return bytes[0];
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.atlas.web.HttpException;
+
+import de.dfki.resc28.ole.bootstrap.metrics.LatencyHistogram;
+
+/**
+ * The behaviour of a simulated graph store: how long a request takes, how
+ * fast its payload travels and how often it fails. Failures are the
+ * {@code 500 - Direct buffer memory} responses a struggling Fuseki sends.
+ *
+ * The simulation also keeps statistics per kind of request: the simulated
+ * latency, the bytes transferred and the injected failures. Delays and
+ * failures are drawn from a seeded random sequence, so a run that sends the
+ * same requests in the same order sees the same store.
+ */
+public class StoreSimulation
+{
+    public static final String DIRECT_BUFFER_MEMORY = "Direct buffer memory";
+
+    private static final class Statistics
+    {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final long bytesPerSecond;
+    private final double failureRate;
+    private final Random random;
+
+    private final ConcurrentMap<String, Statistics> statistics = new ConcurrentSkipListMap<String, Statistics>();
+
+    /**
+     * @param latencyMillis the time every request takes at least
+     * @param jitterMillis the most a request takes longer, drawn evenly
+     * @param bytesPerSecond the bandwidth payloads are sent at, 0 for no limit
+     * @param failureRate the share of requests that fail
+     */
+    public StoreSimulation(long latencyMillis, long jitterMillis, long bytesPerSecond, double failureRate, long seed)
+    {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMillis);
+        this.bytesPerSecond = bytesPerSecond;
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Waits as long as the request takes and fails it if its turn has come.
+     *
+     * @param operation the kind of request, which the statistics are kept for
+     * @param bytes the size of the payload sent or received
+     * @throws HttpException if the request fails
+     */
+    public void request(String operation, long bytes)
+    {
+        long delay;
+        boolean fail;
+        synchronized (random)
+        {
+            delay = latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0);
+            fail = failureRate > 0 && random.nextDouble() < failureRate;
+        }
+        if (bytesPerSecond > 0)
+            delay += TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+
+        long start = System.nanoTime();
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        Statistics stats = statistics(operation);
+        stats.latency.record(System.nanoTime() - start);
+        stats.bytes.add(bytes);
+        if (fail)
+        {
+            stats.failures.increment();
+            throw new HttpException(500, DIRECT_BUFFER_MEMORY, DIRECT_BUFFER_MEMORY);
+        }
+    }
+
+    /**
+     * @return a line per kind of request with its count, latency, bytes and
+     *         failures
+     */
+    public String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Statistics> entry : statistics.entrySet())
+        {
+            Statistics stats = entry.getValue();
+            report.append(String.format("  %-20s %s, %.1f MB, %d failures%n", entry.getKey(), stats.latency.report(),
+                    stats.bytes.sum() / 1e6, stats.failures.sum()));
+        }
+        return report.toString();
+    }
+
+    private Statistics statistics(String operation)
+    {
+        Statistics stats = statistics.get(operation);
+        if (stats == null)
+        {
+            Statistics created = new Statistics();
+            stats = statistics.putIfAbsent(operation, created);
+            if (stats == null)
+                stats = created;
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * A request body that is serialized straight onto the connection, in
+ * chunks, instead of being buffered as a whole first, so that the memory a
+ * request takes does not grow with its size.
+ *
+ * The body is serialized again for every attempt, so a failed request can
+ * be retried as long as the data it is written from is left unchanged,
+ * which is what makes the entity repeatable. The client only ever writes it;
+ * a caller that reads it through {@link #getContent()} instead gets a copy
+ * that is buffered as a whole.
+ */
+abstract class StreamingEntity extends AbstractHttpEntity
+{
+    private static final int GZIP_BUFFER = 8192;
+
+    private final boolean gzip;
+    private volatile long bytesWritten = 0;
+
+    StreamingEntity(ContentType contentType, boolean gzip)
+    {
+        this.gzip = gzip;
+        setContentType(contentType.toString());
+        if (gzip)
+            setContentEncoding("gzip");
+        setChunked(true);
+    }
+
+    /**
+     * Serializes the body; the stream is flushed and finished afterwards.
+     */
+    protected abstract void write(OutputStream out) throws IOException;
+
+    /**
+     * @return the bytes sent by the last attempt, after compression
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    @Override
+    public void writeTo(OutputStream connection) throws IOException
+    {
+        bytesWritten = serialize(connection);
+    }
+
+    /**
+     * @return the bytes written, after compression
+     */
+    private long serialize(OutputStream connection) throws IOException
+    {
+        final long[] count = new long[1];
+        OutputStream out = new FilterOutputStream(connection)
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                this.out.write(b);
+                count[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                this.out.write(b, off, len);
+                count[0] += len;
+            }
+        };
+
+        if (gzip)
+        {
+            GZIPOutputStream compressed = new GZIPOutputStream(out, GZIP_BUFFER);
+            write(compressed);
+            compressed.finish();
+        }
+        else
+        {
+            write(out);
+        }
+        out.flush();
+        return count[0];
+    }
+
+    @Override
+    public boolean isRepeatable()
+    {
+        return true;
+    }
+
+    @Override
+    public long getContentLength()
+    {
+        return -1;
+    }
+
+    /**
+     * Serializes the body into memory, e.g. for logging a request; sending a
+     * request never calls this, so the body is only buffered on demand.
+     */
+    @Override
+    public InputStream getContent() throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        serialize(body);
+        return new ByteArrayInputStream(body.toByteArray());
+    }
+
+    @Override
+    public boolean isStreaming()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Writes named graphs straight into a local TDB dataset directory, which
+ * Fuseki can serve as-is afterwards.
+ *
+ * Instead of one transaction per graph, graphs are loaded in large write
+ * transactions that are committed every {@code batchGraphs} graphs and on
+ * {@link #flush()}.
+ *
+ * A TDB transaction belongs to the thread that began it, so the sink does
+ * all its work on a single writer thread of its own; callers on any thread
+ * wait for their call to be done there, and a transaction left open by one
+ * caller is simply carried on by the next.
+ *
+ * A call that fails aborts the open transaction before its failure is
+ * thrown, so a graph is never committed half-written; the other graphs
+ * since the last commit are lost with it.
+ */
+public class TdbGraphSink implements GraphSink
+{
+    private final Dataset dataset;
+    private final DatasetGraph datasetGraph;
+    private final int batchGraphs;
+    private final ExecutorService writer;
+
+    private int pendingGraphs = 0;
+
+    public TdbGraphSink(File directory, int batchGraphs)
+    {
+        directory.mkdirs();
+        this.dataset = TDBFactory.createDataset(directory.getPath());
+        this.datasetGraph = dataset.asDatasetGraph();
+        this.batchGraphs = batchGraphs;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable task)
+            {
+                Thread thread = new Thread(task, "tdb-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void createNamedGraph(String graphURI, Model model)
+    {
+        // the directory may hold the graph of an earlier bootstrap
+        replaceNamedGraph(graphURI, model);
+    }
+
+    @Override
+    public void addToNamedGraph(final String graphURI, final Model model)
+    {
+        onWriter(new Runnable()
+        {
+            public void run()
+            {
+                add(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void replaceNamedGraph(final String graphURI, final Model model)
+    {
+        onWriter(new Runnable()
+        {
+            public void run()
+            {
+                delete(graphURI);
+                add(graphURI, model);
+            }
+        });
+    }
+
+    @Override
+    public void deleteNamedGraph(final String graphURI)
+    {
+        onWriter(new Runnable()
+        {
+            public void run()
+            {
+                delete(graphURI);
+            }
+        });
+    }
+
+    @Override
+    public void removeFromNamedGraph(final String graphURI, final Model model)
+    {
+        onWriter(new Runnable()
+        {
+            public void run()
+            {
+                begin();
+
+                Node graph = NodeFactory.createURI(graphURI);
+                ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+                try
+                {
+                    while (triples.hasNext())
+                        datasetGraph.delete(new Quad(graph, triples.next()));
+                }
+                finally
+                {
+                    triples.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void flush()
+    {
+        onWriter(new Runnable()
+        {
+            public void run()
+            {
+                commit();
+            }
+        });
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            try
+            {
+                onWriter(new Runnable()
+                {
+                    public void run()
+                    {
+                        dataset.close();
+                    }
+                });
+            }
+            finally
+            {
+                writer.shutdown();
+            }
+        }
+    }
+
+    private void add(String graphURI, Model model)
+    {
+        begin();
+
+        Node graph = NodeFactory.createURI(graphURI);
+        ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (triples.hasNext())
+                datasetGraph.add(new Quad(graph, triples.next()));
+        }
+        finally
+        {
+            triples.close();
+        }
+
+        if (++pendingGraphs >= batchGraphs)
+            commit();
+    }
+
+    private void delete(String graphURI)
+    {
+        begin();
+        datasetGraph.deleteAny(NodeFactory.createURI(graphURI), Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    private void begin()
+    {
+        if (!dataset.isInTransaction())
+            dataset.begin(ReadWrite.WRITE);
+    }
+
+    private void commit()
+    {
+        if (!dataset.isInTransaction())
+            return;
+
+        try
+        {
+            dataset.commit();
+        }
+        finally
+        {
+            dataset.end();
+            pendingGraphs = 0;
+        }
+    }
+
+    private void abort()
+    {
+        pendingGraphs = 0;
+        if (!dataset.isInTransaction())
+            return;
+
+        try
+        {
+            dataset.abort();
+        }
+        finally
+        {
+            dataset.end();
+        }
+    }
+
+    /**
+     * Runs the work on the writer thread and waits for it to be done.
+     */
+    private void onWriter(final Runnable work)
+    {
+        try
+        {
+            writer.submit(new Callable<Void>()
+            {
+                public Void call()
+                {
+                    try
+                    {
+                        work.run();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        abort();
+                        throw e;
+                    }
+                    catch (Error e)
+                    {
+                        abort();
+                        throw e;
+                    }
+                    return null;
+                }
+            }).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the TDB writer", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.entity.ContentType;
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpOp;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sparql.modify.request.UpdateDrop;
+import org.apache.jena.sparql.modify.request.UpdateWriter;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.update.Update;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Collects SPARQL Update operations on named graphs, so that they can be
+ * sent to an update endpoint as a single request.
+ *
+ * The request is serialized straight onto the connection when it is sent;
+ * data to delete from a model is taken from the model at that time, so the
+ * model must not be changed in between.
+ */
+class UpdateBatch
+{
+    private static final ContentType SPARQL_UPDATE = ContentType.create(WebContent.contentTypeSPARQLUpdate, "UTF-8");
+
+    private static interface Operation
+    {
+        void writeTo(UpdateWriter writer);
+    }
+
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    public void drop(String graphURI)
+    {
+        add(new UpdateDrop(NodeFactory.createURI(graphURI), true));
+    }
+
+    public void deleteData(final String graphURI, final Model model)
+    {
+        operations.add(new Operation()
+        {
+            public void writeTo(UpdateWriter writer)
+            {
+                ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+                try
+                {
+                    writer.delete(NodeFactory.createURI(graphURI), triples);
+                }
+                finally
+                {
+                    triples.close();
+                }
+            }
+        });
+    }
+
+    public void deleteData(QuadDataAcc quads)
+    {
+        add(new UpdateDataDelete(quads));
+    }
+
+    public void insertData(QuadDataAcc quads)
+    {
+        add(new UpdateDataInsert(quads));
+    }
+
+    public boolean isEmpty()
+    {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Sends the collected operations to the update endpoint; nothing is sent
+     * if the batch is empty. The operations are kept, so that a failed
+     * request can be sent again.
+     */
+    public void execute(String updateEndpoint)
+    {
+        execute(updateEndpoint, null, false);
+    }
+
+    /**
+     * @param httpClient the client to send the request with, {@code null}
+     *        for the default one
+     * @param gzip whether to compress the request
+     */
+    public void execute(String updateEndpoint, HttpClient httpClient, boolean gzip)
+    {
+        if (isEmpty())
+            return;
+
+        HttpOp.execHttpPost(updateEndpoint, new StreamingEntity(SPARQL_UPDATE, gzip)
+        {
+            protected void write(OutputStream out)
+            {
+                IndentedWriter indented = new IndentedWriter(out);
+                UpdateWriter writer = new UpdateWriter(indented, new SerializationContext());
+                writer.open();
+                for (Operation operation : operations)
+                    operation.writeTo(writer);
+                writer.close();
+                indented.flush();
+            }
+        }, httpClient, null, null);
+    }
+
+    private void add(final Update update)
+    {
+        operations.add(new Operation()
+        {
+            public void writeTo(UpdateWriter writer)
+            {
+                writer.update(update);
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.rdf.model.Model;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.dfki.resc28.ole.bootstrap.store.InMemoryGraphSink;
+
+public class DumpRestoreTest
+{
+    private static final int PARTS = 10;
+    private static final String REPO = "http://example.org/repo";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Fails the first time it is handed the given graph, after having
+     * written the graphs of its batch before it, and records the graphs it
+     * replaces.
+     */
+    private static final class FailingSink extends InMemoryGraphSink
+    {
+        private final List<String> replaced = new ArrayList<String>();
+        private String failOn;
+
+        FailingSink(String failOn)
+        {
+            this.failOn = failOn;
+        }
+
+        @Override
+        public synchronized void addToNamedGraph(String graphURI, Model model)
+        {
+            if (graphURI.equals(failOn))
+            {
+                failOn = null;
+                throw new IllegalStateException("Connection reset");
+            }
+            super.addToNamedGraph(graphURI, model);
+        }
+
+        @Override
+        public synchronized void replaceNamedGraph(String graphURI, Model model)
+        {
+            replaced.add(graphURI);
+            super.replaceNamedGraph(graphURI, model);
+        }
+    }
+
+    @Test
+    public void aRestoreWritesEveryGraphAndForgetsItsProgress() throws IOException
+    {
+        File dump = dump();
+        File progress = new File(folder.getRoot(), "dump.nq.progress");
+        InMemoryGraphSink sink = new InMemoryGraphSink();
+
+        new DumpRestore(sink, 3, 3, progress).run(dump);
+
+        assertRestored(sink);
+        assertFalse(progress.exists());
+    }
+
+    @Test
+    public void theSinkIsOnlyFlushedAtCheckpoints() throws IOException
+    {
+        final AtomicInteger flushes = new AtomicInteger();
+        InMemoryGraphSink sink = new InMemoryGraphSink()
+        {
+            @Override
+            public void flush()
+            {
+                flushes.incrementAndGet();
+            }
+        };
+
+        // 20 graphs in batches of 3, flushed every 3 batches and once at the end
+        new DumpRestore(sink, 3, 8, new File(folder.getRoot(), "dump.nq.progress")).run(dump());
+
+        assertRestored(sink);
+        assertEquals(3, flushes.get());
+    }
+
+    @Test
+    public void aResumedRestoreDoesNotDuplicateGraphsWrittenBeforeItStopped() throws IOException
+    {
+        File dump = dump();
+        File progress = new File(folder.getRoot(), "dump.nq.progress");
+        FailingSink sink = new FailingSink(part(7));
+
+        try
+        {
+            new DumpRestore(sink, 3, 6, progress).run(dump);
+            fail("The restore must fail");
+        }
+        catch (IOException e)
+        {
+            assertTrue(progress.isFile());
+        }
+        // the last checkpoint is just before part 6, which is in the store already
+        assertEquals("12", new String(Files.readAllBytes(progress.toPath()), StandardCharsets.UTF_8).trim());
+        assertEquals(3, sink.getNamedGraph(part(6)).size());
+
+        new DumpRestore(sink, 3, 6, progress).run(dump);
+
+        assertRestored(sink);
+        assertFalse(progress.exists());
+        // only the graphs up to the next checkpoint may have been written, and the repo graph was added to before
+        assertEquals(Arrays.asList(part(6), part(7), part(8)), sink.replaced);
+    }
+
+    private void assertRestored(InMemoryGraphSink sink)
+    {
+        assertEquals(PARTS + 1, sink.size());
+        for (int part = 0; part < PARTS; part++)
+            assertEquals(part(part), 3, sink.getNamedGraph(part(part)).size());
+        assertEquals(PARTS, sink.getNamedGraph(REPO).size());
+    }
+
+    // a graph with a blank node per part, each followed by a link from the repo graph, as the nquads backend writes them
+    private File dump() throws IOException
+    {
+        File dump = new File(folder.getRoot(), "dump.nq");
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(dump.toPath(), StandardCharsets.UTF_8));
+        try
+        {
+            for (int part = 0; part < PARTS; part++)
+            {
+                String graph = "<" + part(part) + ">";
+                out.format("%s <http://purl.org/dc/terms/title> \"Part %d\" %s .%n", graph, part, graph);
+                out.format("%s <http://purl.org/dc/terms/creator> _:author%d %s .%n", graph, part, graph);
+                out.format("_:author%d <http://xmlns.com/foaf/0.1/name> \"Author %d\" %s .%n", part, part, graph);
+                out.format("<%s> <http://www.w3.org/ns/dcat#dataset> %s <%s> .%n", REPO, graph, REPO);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return dump;
+    }
+
+    private static String part(int part)
+    {
+        return "http://example.org/assets/" + part;
+    }
+}
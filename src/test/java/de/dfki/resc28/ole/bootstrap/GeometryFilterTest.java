@@ -0,0 +1,115 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class GeometryFilterTest
+{
+    private static final String HEADER = "0 Brick  2 x  4\n0 Name: 3001.dat\n0 Author: James Jessiman\n";
+
+    @Test
+    public void geometryRowsAreDroppedWithTheirLineTerminator() throws IOException
+    {
+        assertFiltered(HEADER + "1 16 0 0 0 1 0 0 0 1 0 0 0 1 s\\3001s01.dat\n",
+                HEADER + "2 24 0 0 0 1 0 0\n1 16 0 0 0 1 0 0 0 1 0 0 0 1 s\\3001s01.dat\n3 16 0 0 0 1 0 0 0 1 0\n"
+                        + "4 16 0 0 0 1 0 0 0 1 0 1 1 1\n5 24 0 0 0 1 0 0 0 1 0 1 1 1\n");
+    }
+
+    @Test
+    public void crlfLineEndingsAreKeptAsTheyAre() throws IOException
+    {
+        assertFiltered("0 Brick  2 x  4\r\n1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat\r\n",
+                "0 Brick  2 x  4\r\n3 16 0 0 0 1 0 0 0 1 0\r\n1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat\r\n4 16 0 0 0 1 0 0 0 1 0 1 1 1\r\n");
+    }
+
+    @Test
+    public void aLastLineWithoutNewlineIsFilteredToo() throws IOException
+    {
+        assertFiltered(HEADER, HEADER + "2 24 0 0 0 1 0 0");
+        assertFiltered(HEADER + "1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat", HEADER + "1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat");
+    }
+
+    @Test
+    public void leadingWhiteSpaceIsSkippedBeforeTheLineType() throws IOException
+    {
+        assertFiltered(HEADER + "\t 1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat\n",
+                HEADER + "\t 1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat\n\t2 24 0 0 0 1 0 0\n  3\t16 0 0 0 1 0 0 0 1 0\n \t4 16 0 0 0 1 0 0 0 1 0 1 1 1\n");
+    }
+
+    @Test
+    public void aLineTypeMustBeFollowedByWhiteSpace() throws IOException
+    {
+        String kept = "25 is not a line type\n2.5\n5x\n2";
+        assertFiltered(HEADER + kept, HEADER + kept);
+        assertFiltered(HEADER, HEADER + "2\n3\r\n");
+    }
+
+    @Test
+    public void emptyAndBlankLinesAreKept() throws IOException
+    {
+        assertFiltered("", "");
+        assertFiltered("\n\r\n \t\n" + HEADER, "\n\r\n \t\n" + HEADER);
+    }
+
+    @Test
+    public void linesLongerThanTheBuffersAreFiltered() throws IOException
+    {
+        StringBuilder input = new StringBuilder(HEADER);
+        StringBuilder expected = new StringBuilder(HEADER);
+        for (int row = 0; row < 2000; row++)
+        {
+            input.append("3 16 0 0 0 1 0 0 0 1 0\n");
+            if (row % 100 == 0)
+            {
+                String comment = "0 // " + repeat('x', 20 * row) + "\n";
+                input.append(comment);
+                expected.append(comment);
+            }
+        }
+        assertFiltered(expected.toString(), input.toString());
+    }
+
+    // the in-place filter and the reader must keep exactly the same characters
+    private static void assertFiltered(String expected, String input) throws IOException
+    {
+        char[] data = input.toCharArray();
+        assertEquals(expected, new String(data, 0, GeometryFilter.strip(data, data.length)));
+
+        assertEquals(expected, readAll(new GeometryFilter(new StringReader(input)), 7));
+        assertEquals(expected, readAll(new GeometryFilter(new StringReader(input)), 1 << 16));
+
+        StringBuilder read = new StringBuilder();
+        Reader filter = new GeometryFilter(new StringReader(input));
+        for (int c = filter.read(); c >= 0; c = filter.read())
+            read.append((char) c);
+        assertEquals(expected, read.toString());
+    }
+
+    private static String readAll(Reader reader, int chunk) throws IOException
+    {
+        StringBuilder read = new StringBuilder();
+        char[] buffer = new char[chunk];
+        for (int n = reader.read(buffer, 0, chunk); n >= 0; n = reader.read(buffer, 0, chunk))
+            read.append(buffer, 0, n);
+        reader.close();
+        return read.toString();
+    }
+
+    private static String repeat(char c, int count)
+    {
+        StringBuilder repeated = new StringBuilder(count);
+        for (int i = 0; i < count; i++)
+            repeated.append(c);
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.dfki.resc28.ole.bootstrap.store.TdbGraphSink;
+
+public class ParsePipelineTest
+{
+    private static final int PARTS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void configure()
+    {
+        if (System.getProperty("bootstrap.graphStore") == null)
+            System.setProperty("bootstrap.graphStore", "memory");
+        App.configure();
+    }
+
+    @Test(timeout = 120000)
+    public void partsAreWrittenIntoTdbFromTheWriterThread() throws Exception
+    {
+        File parts = folder.newFolder("parts");
+        new CorpusGenerator(28, 5, 1, 2, "8:1").generate(parts, PARTS, 2);
+        File[] files = parts.listFiles();
+        Arrays.sort(files);
+
+        File directory = folder.newFolder("tdb");
+        TdbGraphSink sink = new TdbGraphSink(directory, 7);
+        // as App does on its main thread, before the writer thread is started
+        Model repo = ModelFactory.createDefaultModel();
+        repo.add(repo.createResource(App.fRepoUri), DCTerms.title, "repo");
+        sink.createNamedGraph(App.fRepoUri, repo);
+
+        Set<File> none = Collections.emptySet();
+        Set<File> all = new HashSet<File>(Arrays.asList(files));
+        ParsePipeline pipeline = new ParsePipeline(2, 4, sink);
+        pipeline.setVerbose(false);
+        pipeline.run(files, none, all, none);
+        sink.close();
+
+        Dataset dataset = TDBFactory.createDataset(directory.getPath());
+        dataset.begin(ReadWrite.READ);
+        try
+        {
+            assertEquals(1, dataset.getNamedModel(App.fRepoUri).size());
+            for (File file : files)
+            {
+                String basename = file.getName().substring(0, file.getName().lastIndexOf('.'));
+                assertTrue(basename, dataset.containsNamedModel(Util.joinPath(App.fAssetBaseUri, Util.urlEncoded(basename))));
+            }
+        }
+        finally
+        {
+            dataset.end();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PartInputTest
+{
+    private static final int MAP_THRESHOLD = 1 << 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void smallAndMappedFilesAreReadWhole() throws IOException
+    {
+        PartInput input = new PartInput(StandardCharsets.UTF_8, MAP_THRESHOLD);
+
+        assertEquals("0 Brick 2 x 4\r\n", read(input, part("0 Brick 2 x 4\r\n")));
+        String large = rows(MAP_THRESHOLD + 1);
+        assertEquals(large, read(input, part(large)));
+    }
+
+    @Test
+    public void theArrayOfAMappedFileIsDroppedOnRelease() throws IOException
+    {
+        PartInput input = new PartInput(StandardCharsets.UTF_8, MAP_THRESHOLD);
+
+        read(input, part(rows(4 * MAP_THRESHOLD)));
+        assertTrue(input.chars().length >= 4 * MAP_THRESHOLD);
+        input.release();
+        assertTrue(input.chars().length <= MAP_THRESHOLD);
+    }
+
+    @Test
+    public void theArrayOfAReadFileIsKeptOnRelease() throws IOException
+    {
+        PartInput input = new PartInput(StandardCharsets.UTF_8, MAP_THRESHOLD);
+
+        read(input, part(rows(MAP_THRESHOLD / 2)));
+        char[] chars = input.chars();
+        input.release();
+        assertTrue(chars == input.chars());
+    }
+
+    private static String read(PartInput input, File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            int length = input.read(channel);
+            return new String(Arrays.copyOf(input.chars(), length));
+        }
+    }
+
+    private File part(String content) throws IOException
+    {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    // about the given number of characters of geometry rows
+    private static String rows(int chars)
+    {
+        StringBuilder rows = new StringBuilder();
+        while (rows.length() < chars)
+            rows.append("1 16 0 0 0 1 0 0 0 1 0 0 0 1 stud.dat\r\n");
+        return rows.toString();
+    }
+}
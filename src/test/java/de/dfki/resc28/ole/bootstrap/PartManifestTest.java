@@ -0,0 +1,116 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PartManifestTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void newPartsAreChanged() throws IOException
+    {
+        File part = part("3001.dat", "0 Brick 2 x 4");
+
+        assertTrue(new PartManifest().update(part, new PartManifest()));
+    }
+
+    @Test
+    public void untouchedPartsAreNotHashedAgain() throws IOException
+    {
+        File part = part("3001.dat", "0 Brick 2 x 4");
+        PartManifest previous = new PartManifest();
+        previous.update(part, new PartManifest());
+        PartManifest.Entry before = previous.get("3001.dat");
+
+        PartManifest manifest = new PartManifest();
+        assertFalse(manifest.update(part, previous));
+        assertTrue(before == manifest.get("3001.dat"));
+    }
+
+    @Test
+    public void touchedPartsWithTheSameContentAreNotChanged() throws IOException
+    {
+        File part = part("3001.dat", "0 Brick 2 x 4");
+        PartManifest previous = new PartManifest();
+        previous.update(part, new PartManifest());
+
+        part.setLastModified(part.lastModified() + 60000);
+        PartManifest manifest = new PartManifest();
+        assertFalse(manifest.update(part, previous));
+        assertEquals(part.lastModified(), manifest.get("3001.dat").lastModified);
+    }
+
+    @Test
+    public void editedPartsAreChanged() throws IOException
+    {
+        File part = part("3001.dat", "0 Brick 2 x 4");
+        PartManifest previous = new PartManifest();
+        previous.update(part, new PartManifest());
+
+        part("3001.dat", "0 Brick  2 x  4");
+        part.setLastModified(part.lastModified() + 60000);
+        assertTrue(new PartManifest().update(part, previous));
+    }
+
+    @Test
+    public void removedPartsAreMissingFromTheNextManifest() throws IOException
+    {
+        PartManifest previous = new PartManifest();
+        previous.update(part("3001.dat", "0 Brick 2 x 4"), new PartManifest());
+        previous.update(part("3002.dat", "0 Brick 2 x 3"), new PartManifest());
+
+        PartManifest manifest = new PartManifest();
+        manifest.update(new File(folder.getRoot(), "3001.dat"), previous);
+
+        HashSet<String> removed = new HashSet<String>(previous.paths());
+        removed.removeAll(manifest.paths());
+        assertEquals(new HashSet<String>(Arrays.asList("3002.dat")), removed);
+    }
+
+    @Test
+    public void aSavedManifestLoadsTheSameEntries() throws IOException
+    {
+        PartManifest manifest = new PartManifest();
+        manifest.update(part("3001.dat", "0 Brick 2 x 4"), new PartManifest());
+        manifest.update(part("3002.dat", "0 Brick 2 x 3"), new PartManifest());
+
+        File file = new File(folder.getRoot(), "manifest.tsv");
+        manifest.save(file);
+        PartManifest loaded = PartManifest.load(file);
+
+        assertEquals(manifest.paths(), loaded.paths());
+        for (String path : manifest.paths())
+        {
+            assertEquals(manifest.get(path).size, loaded.get(path).size);
+            assertEquals(manifest.get(path).lastModified, loaded.get(path).lastModified);
+            assertEquals(manifest.get(path).hash, loaded.get(path).hash);
+        }
+        assertFalse(new File(folder.getRoot(), "manifest.tsv.tmp").exists());
+    }
+
+    private File part(String name, String content) throws IOException
+    {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
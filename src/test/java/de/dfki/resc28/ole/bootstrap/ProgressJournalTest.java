@@ -0,0 +1,96 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProgressJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void onlyCommittedPartsAreLoaded() throws IOException
+    {
+        File file = new File(folder.getRoot(), "bootstrap.journal");
+        ProgressJournal journal = new ProgressJournal(file, false);
+        journal.record("3001.dat");
+        journal.record("3002.dat");
+        journal.commit();
+        journal.record("3003.dat");
+        journal.close();
+
+        assertEquals(new HashSet<String>(Arrays.asList("3001.dat", "3002.dat")), ProgressJournal.load(file));
+    }
+
+    @Test
+    public void aLineCutShortIsIgnoredAndDroppedOnResume() throws IOException
+    {
+        File file = new File(folder.getRoot(), "bootstrap.journal");
+        Files.write(file.toPath(), "3001.dat\n3002.dat\n30".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(new HashSet<String>(Arrays.asList("3001.dat", "3002.dat")), ProgressJournal.load(file));
+
+        ProgressJournal journal = new ProgressJournal(file, true);
+        journal.record("3003.dat");
+        journal.commit();
+        journal.close();
+
+        assertEquals("3001.dat\n3002.dat\n3003.dat\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void aJournalWithoutALineBreakIsEmptiedOnResume() throws IOException
+    {
+        File file = new File(folder.getRoot(), "bootstrap.journal");
+        Files.write(file.toPath(), "3001.d".getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
+
+        assertTrue(ProgressJournal.load(file).isEmpty());
+        new ProgressJournal(file, true).close();
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void aNewJournalStartsOver() throws IOException
+    {
+        File file = new File(folder.getRoot(), "bootstrap.journal");
+        Files.write(file.toPath(), "3001.dat\n".getBytes(StandardCharsets.UTF_8));
+
+        ProgressJournal journal = new ProgressJournal(file, false);
+        journal.record("3002.dat");
+        journal.commit();
+        journal.close();
+
+        assertEquals(new HashSet<String>(Arrays.asList("3002.dat")), ProgressJournal.load(file));
+    }
+
+    @Test
+    public void aCompleteBootstrapRemovesItsJournal() throws IOException
+    {
+        File file = new File(folder.getRoot(), "bootstrap.journal");
+        ProgressJournal journal = new ProgressJournal(file, false);
+        journal.record("3001.dat");
+        journal.commit();
+        journal.delete();
+
+        assertFalse(file.exists());
+        assertTrue(ProgressJournal.load(file).isEmpty());
+    }
+}
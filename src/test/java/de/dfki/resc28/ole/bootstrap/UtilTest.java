@@ -0,0 +1,46 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.junit.Test;
+
+public class UtilTest
+{
+    private static final Resource PART = ResourceFactory.createResource("http://ole-frontend/repo/assets/3001");
+
+    @Test
+    public void skolemIrisAreStableAcrossRuns()
+    {
+        // a changed IRI would make every delta sync rewrite the graphs that use it
+        assertEquals("http://ole-frontend/repo/assets/3001#history-512bf820b4d142c7",
+                Util.skolemIri(PART, "history", "Anna Adler", "2016-09-14").getURI());
+        assertEquals(Util.skolemIri(PART, "history", "Anna Adler", "2016-09-14"),
+                Util.skolemIri(PART, "history", "Anna Adler", "2016-09-14"));
+    }
+
+    @Test
+    public void skolemIrisTellOwnersKindsAndContentApart()
+    {
+        Resource history = Util.skolemIri(PART, "history", "Anna Adler", "2016-09-14");
+
+        assertFalse(history.equals(Util.skolemIri(ResourceFactory.createResource("http://ole-frontend/repo/assets/3002"),
+                "history", "Anna Adler", "2016-09-14")));
+        assertFalse(history.equals(Util.skolemIri(PART, "rights", "Anna Adler", "2016-09-14")));
+        assertFalse(history.equals(Util.skolemIri(PART, "history", "Anna Adler", "2016-09-15")));
+    }
+
+    @Test
+    public void skolemIrisDoNotRunFieldsTogether()
+    {
+        assertFalse(Util.skolemIri(PART, "history", "ab", "c").equals(Util.skolemIri(PART, "history", "a", "bc")));
+        assertFalse(Util.skolemIri(PART, "history", "a", "").equals(Util.skolemIri(PART, "history", "a")));
+    }
+}
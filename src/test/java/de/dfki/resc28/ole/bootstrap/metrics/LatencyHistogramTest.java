@@ -0,0 +1,112 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void anEmptyHistogramReportsZero()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99), 0);
+        assertEquals(0.0, histogram.getMeanNanos(), 0.0);
+    }
+
+    @Test
+    public void smallDurationsAreCountedExactly()
+    {
+        for (long nanos = 0; nanos < 8; nanos++)
+        {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(1000000);
+            assertEquals(nanos, histogram.getPercentileNanos(50));
+        }
+    }
+
+    @Test
+    public void percentilesAreAtMostAQuarterTooHigh()
+    {
+        Random random = new Random(28);
+        for (int i = 0; i < 10000; i++)
+        {
+            long nanos = (long) Math.pow(10, 12 * random.nextDouble());
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(Long.MAX_VALUE / 2);
+
+            long percentile = histogram.getPercentileNanos(50);
+            assertTrue(nanos + " reported as " + percentile, percentile >= nanos);
+            assertTrue(nanos + " reported as " + percentile, percentile <= nanos * 1.25);
+        }
+    }
+
+    @Test
+    public void bucketsEndAtTheirUpperBound()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1023);
+        histogram.record(1024);
+        histogram.record(1024);
+
+        // 1023 is the last duration of its bucket, 1024 the first of the next one
+        assertEquals(1023, histogram.getPercentileNanos(33));
+        assertEquals(1024, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void percentilesDoNotExceedTheMaximum()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++)
+            histogram.record(1000);
+        histogram.record(1100);
+
+        assertEquals(1023, histogram.getPercentileNanos(50));
+        assertEquals(1100, histogram.getPercentileNanos(100));
+        assertEquals(1100, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getTotalNanos());
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void countsAndMeanAreExact()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(3000);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(4000, histogram.getTotalNanos());
+        assertEquals(2000.0, histogram.getMeanNanos(), 0.0);
+    }
+
+    @Test
+    public void durationsAreFormattedInTheirUnit()
+    {
+        assertEquals("999.0 us", LatencyHistogram.format(999000).replace(',', '.'));
+        assertEquals("1.5 ms", LatencyHistogram.format(1500000).replace(',', '.'));
+        assertEquals("2.50 s", LatencyHistogram.format(2500000000L).replace(',', '.'));
+    }
+}
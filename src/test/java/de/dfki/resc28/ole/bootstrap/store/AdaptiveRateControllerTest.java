@@ -0,0 +1,185 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.atlas.web.HttpException;
+import org.junit.After;
+import org.junit.Test;
+
+public class AdaptiveRateControllerTest
+{
+    private static final Runnable SUCCEED = new Runnable()
+    {
+        public void run()
+        {
+        }
+    };
+
+    @After
+    public void clearInterrupt()
+    {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void fastRequestsRaiseTheRateUpToTheMaximum()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(100, 1, 103, 60000, 0);
+
+        controller.execute(SUCCEED);
+        assertEquals(101, controller.getRate(), 1e-9);
+        controller.execute(SUCCEED);
+        controller.execute(SUCCEED);
+        controller.execute(SUCCEED);
+        assertEquals(103, controller.getRate(), 1e-9);
+    }
+
+    @Test
+    public void slowRequestsLowerTheRateByAQuarter()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(100, 70, 1000, 0, 0);
+
+        controller.execute(new Runnable()
+        {
+            public void run()
+            {
+                sleepMillis(2);
+            }
+        });
+        assertEquals(75, controller.getRate(), 1e-9);
+
+        controller.execute(new Runnable()
+        {
+            public void run()
+            {
+                sleepMillis(2);
+            }
+        });
+        assertEquals(70, controller.getRate(), 1e-9);
+    }
+
+    @Test
+    public void serverErrorsHalveTheRateAndAreRetried()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(400, 1, 1000, 60000, 3);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        controller.execute(new Runnable()
+        {
+            public void run()
+            {
+                if (attempts.incrementAndGet() == 1)
+                    throw new HttpException(500, "Direct buffer memory", null);
+            }
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(201, controller.getRate(), 1e-9);
+        assertEquals(1, controller.getRequests());
+        assertEquals(1, controller.getRetries());
+        assertEquals(1, controller.getOverloads());
+    }
+
+    @Test
+    public void theServerErrorThatEndsARequestHalvesTheRateToo()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(400, 1, 1000, 60000, 1);
+
+        try
+        {
+            controller.execute(new Runnable()
+            {
+                public void run()
+                {
+                    throw new HttpException(503, "Service Unavailable", null);
+                }
+            });
+            fail("The last server error must be thrown");
+        }
+        catch (HttpException e)
+        {
+            assertEquals(503, e.getResponseCode());
+        }
+        assertEquals(100, controller.getRate(), 1e-9);
+        assertEquals(1, controller.getRequests());
+        assertEquals(1, controller.getRetries());
+        assertEquals(2, controller.getOverloads());
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(400, 1, 1000, 60000, 3);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try
+        {
+            controller.execute(new Runnable()
+            {
+                public void run()
+                {
+                    attempts.incrementAndGet();
+                    throw new HttpException(404, "Not Found", null);
+                }
+            });
+            fail("A client error must be thrown");
+        }
+        catch (HttpException e)
+        {
+            assertEquals(404, e.getResponseCode());
+        }
+        assertEquals(1, attempts.get());
+        assertEquals(400, controller.getRate(), 1e-9);
+        assertEquals(1, controller.getRequests());
+        assertEquals(0, controller.getRetries());
+        assertEquals(0, controller.getOverloads());
+    }
+
+    @Test
+    public void anInterruptedThreadGivesUpInsteadOfSpinningThroughItsRetries()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(1000, 1, 1000, 60000, 5);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        Thread.currentThread().interrupt();
+        try
+        {
+            controller.execute(new Runnable()
+            {
+                public void run()
+                {
+                    attempts.incrementAndGet();
+                    throw new HttpException(500, "Direct buffer memory", null);
+                }
+            });
+            fail("An interrupted request must not succeed");
+        }
+        catch (IllegalStateException e)
+        {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertEquals(1, attempts.get());
+        assertTrue(Thread.currentThread().isInterrupted());
+    }
+
+    private static void sleepMillis(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchingGraphSinkTest
+{
+    private static final int PARTS = 50;
+
+    private GraphStoreStub stub;
+
+    @Before
+    public void start() throws IOException
+    {
+        stub = new GraphStoreStub(0, new StoreSimulation(1, 2, 0, 0, 28));
+    }
+
+    @After
+    public void stop()
+    {
+        stub.stop();
+    }
+
+    @Test
+    public void batchesReachTheStoreInParallel()
+    {
+        upload(false);
+    }
+
+    @Test
+    public void compressedBatchesReachTheStore()
+    {
+        upload(true);
+    }
+
+    @Test
+    public void aDeletedGraphWaitsForTheBatchWithItsQuads()
+    {
+        BatchingGraphSink sink = new BatchingGraphSink(stub.getDataEndpoint(), stub.getUpdateEndpoint(), 5, 1 << 20, 3, false,
+                new AdaptiveRateController(1000, 1, 1000, 60000, 0));
+
+        for (int part = 0; part < 7; part++)
+            sink.addToNamedGraph(part(part), part(part, "Brick"));
+        sink.deleteNamedGraph(part(6));
+        sink.close();
+
+        assertEquals(2, stub.getDataset().getGraph(NodeFactory.createURI(part(5))).size());
+        assertFalse(stub.getDataset().containsGraph(NodeFactory.createURI(part(6))));
+    }
+
+    @Test
+    public void aCreatedGraphReplacesTheOneOfAnEarlierRun()
+    {
+        for (String title : new String[] { "Brick", "Plate" })
+        {
+            BatchingGraphSink sink = new BatchingGraphSink(stub.getDataEndpoint(), stub.getUpdateEndpoint(), 200, 1 << 20, 3, false,
+                    new AdaptiveRateController(1000, 1, 1000, 60000, 0));
+            sink.createNamedGraph(part(0), part(0, title));
+            sink.close();
+        }
+
+        assertEquals(2, stub.getDataset().getGraph(NodeFactory.createURI(part(0))).size());
+        assertEquals(1, stub.getDataset().getGraph(NodeFactory.createURI(part(0)))
+                .find(null, DCTerms.title.asNode(), NodeFactory.createLiteral("Plate")).toList().size());
+    }
+
+    private void upload(boolean gzip)
+    {
+        BatchingGraphSink sink = new BatchingGraphSink(stub.getDataEndpoint(), stub.getUpdateEndpoint(), 4, 1 << 20, 3, gzip,
+                new AdaptiveRateController(1000, 1, 1000, 60000, 0));
+
+        for (int part = 0; part < PARTS; part++)
+            sink.addToNamedGraph(part(part), part(part, "Brick"));
+        sink.replaceNamedGraph(part(0), part(0, "Plate"));
+        sink.close();
+
+        for (int part = 0; part < PARTS; part++)
+            assertEquals(part(part), 2, stub.getDataset().getGraph(NodeFactory.createURI(part(part))).size());
+        assertEquals(1, stub.getDataset().getGraph(NodeFactory.createURI(part(0)))
+                .find(null, DCTerms.title.asNode(), NodeFactory.createLiteral("Plate")).toList().size());
+    }
+
+    private static String part(int part)
+    {
+        return "http://example.org/assets/" + part;
+    }
+
+    private static Model part(int part, String title)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Resource asset = model.createResource(part(part));
+        model.add(asset, DCTerms.title, title);
+        model.add(asset, DCTerms.identifier, Integer.toString(part));
+        return model;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeltaSyncSinkTest
+{
+    private static final String REPO = "http://example.org/repo";
+    private static final String PART = "http://example.org/assets/3001";
+
+    /**
+     * Counts the queries and updates the stub is sent.
+     */
+    private static final class CountingSimulation extends StoreSimulation
+    {
+        final AtomicInteger queries = new AtomicInteger();
+        final AtomicInteger updates = new AtomicInteger();
+
+        CountingSimulation()
+        {
+            super(0, 0, 0, 0, 28);
+        }
+
+        @Override
+        public void request(String operation, long bytes)
+        {
+            if (operation.startsWith("query."))
+                queries.incrementAndGet();
+            else if (operation.startsWith("update."))
+                updates.incrementAndGet();
+        }
+    }
+
+    private CountingSimulation simulation;
+    private GraphStoreStub stub;
+    private DeltaSyncSink sink;
+
+    @Before
+    public void start() throws IOException
+    {
+        simulation = new CountingSimulation();
+        stub = new GraphStoreStub(0, simulation);
+        sink = new DeltaSyncSink(stub.getQueryEndpoint(), stub.getUpdateEndpoint(), 100,
+                new AdaptiveRateController(1000, 1, 1000, 60000, 0));
+    }
+
+    @After
+    public void stop()
+    {
+        stub.stop();
+    }
+
+    @Test
+    public void addedGraphsAreInsertedWithoutFetchingThem()
+    {
+        for (int chunk = 0; chunk < 5; chunk++)
+        {
+            Model links = ModelFactory.createDefaultModel();
+            links.add(links.createResource(REPO), RDFS.seeAlso, links.createResource(PART + "/" + chunk));
+            sink.addToNamedGraph(REPO, links);
+            sink.flush();
+        }
+
+        assertEquals(0, simulation.queries.get());
+        assertEquals(5, simulation.updates.get());
+        assertEquals(5, stored(REPO).size());
+    }
+
+    @Test
+    public void replacedGraphsOnlySendTheirDifferences()
+    {
+        sink.replaceNamedGraph(PART, part("Brick 2 x 4", "Brick"));
+        sink.flush();
+        assertEquals(2, stored(PART).size());
+
+        sink.replaceNamedGraph(PART, part("Brick 2 x 4", "Brick"));
+        sink.flush();
+        assertEquals(2, simulation.queries.get());
+        assertEquals(1, simulation.updates.get());
+
+        sink.replaceNamedGraph(PART, part("Brick 2 x 4", "Plate"));
+        sink.flush();
+        assertEquals(2, simulation.updates.get());
+        Graph stored = stored(PART);
+        assertEquals(2, stored.size());
+        assertTrue(stored.contains(NodeFactory.createURI(PART), RDFS.label.asNode(), NodeFactory.createLiteral("Plate")));
+    }
+
+    @Test
+    public void addedGraphsWithChangedBlankNodesAreRewrittenAsAWhole()
+    {
+        sink.addToNamedGraph(PART, withAuthor("Anna"));
+        sink.flush();
+        sink.addToNamedGraph(PART, withAuthor("Anna"));
+        sink.flush();
+        assertEquals(2, stored(PART).size());
+        assertEquals(1, simulation.updates.get());
+
+        sink.addToNamedGraph(PART, withAuthor("Bert"));
+        sink.flush();
+        Graph stored = stored(PART);
+        assertEquals(2, stored.size());
+        assertTrue(stored.contains(Node.ANY, RDFS.label.asNode(), NodeFactory.createLiteral("Bert")));
+    }
+
+    @Test
+    public void theStoredCreationDateIsKept()
+    {
+        Model first = part("Brick 2 x 4", "Brick");
+        Literal created = first.createTypedLiteral("2016-09-14", XSDDatatype.XSDdate);
+        first.add(first.createResource(PART), DCTerms.created, created);
+        sink.replaceNamedGraph(PART, first);
+        sink.flush();
+
+        Model again = part("Brick 2 x 4", "Brick");
+        again.add(again.createResource(PART), DCTerms.created, again.createTypedLiteral(Calendar.getInstance().getTime(), XSDDatatype.XSDdate));
+        sink.replaceNamedGraph(PART, again);
+        sink.flush();
+
+        assertEquals(1, simulation.updates.get());
+        assertTrue(stored(PART).contains(NodeFactory.createURI(PART), DCTerms.created.asNode(), created.asNode()));
+    }
+
+    private Graph stored(String graphURI)
+    {
+        return stub.getDataset().getGraph(NodeFactory.createURI(graphURI));
+    }
+
+    private static Model part(String title, String label)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Resource part = model.createResource(PART);
+        model.add(part, DCTerms.title, title);
+        model.add(part, RDFS.label, label);
+        return model;
+    }
+
+    private static Model withAuthor(String name)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Resource author = model.createResource();
+        model.add(model.createResource(PART), DCTerms.creator, author);
+        model.add(author, RDFS.label, name);
+        return model;
+    }
+}
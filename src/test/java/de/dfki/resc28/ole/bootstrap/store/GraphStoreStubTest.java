@@ -0,0 +1,101 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.update.UpdateExecutionFactory;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphStoreStubTest
+{
+    private static final String PART = "http://example.org/assets/3001";
+
+    private GraphStoreStub stub;
+
+    @Before
+    public void start() throws IOException
+    {
+        stub = new GraphStoreStub(0, new StoreSimulation(0, 0, 0, 0, 28));
+    }
+
+    @After
+    public void stop()
+    {
+        stub.stop();
+    }
+
+    @Test
+    public void updatesAreAnsweredByQueries()
+    {
+        UpdateExecutionFactory.createRemote(UpdateFactory.create(
+                "INSERT DATA { GRAPH <" + PART + "> { <" + PART + "> <" + DCTerms.title + "> \"Brick 2 x 4\" } }"),
+                stub.getUpdateEndpoint()).execute();
+
+        QueryExecution execution = QueryExecutionFactory.sparqlService(stub.getQueryEndpoint(),
+                "ASK { GRAPH <" + PART + "> { ?part ?p \"Brick 2 x 4\" } }");
+        try
+        {
+            assertTrue(execution.execAsk());
+        }
+        finally
+        {
+            execution.close();
+        }
+        assertEquals(1, stub.getDataset().getGraph(NodeFactory.createURI(PART)).size());
+    }
+
+    @Test
+    public void injectedFailuresAreServerErrorsWithoutAnEffect() throws IOException
+    {
+        stub.stop();
+        stub = new GraphStoreStub(0, new StoreSimulation(0, 0, 0, 1, 28));
+
+        try
+        {
+            UpdateBatch update = new UpdateBatch();
+            update.drop(PART);
+            update.execute(stub.getUpdateEndpoint());
+            fail("Every request must fail");
+        }
+        catch (HttpException e)
+        {
+            assertEquals(500, e.getResponseCode());
+        }
+        assertTrue(stub.getDataset().isEmpty());
+    }
+
+    @Test
+    public void theWorkersDoNotKeepTheProcessAlive()
+    {
+        UpdateBatch update = new UpdateBatch();
+        update.drop(PART);
+        update.execute(stub.getUpdateEndpoint());
+
+        int workers = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().startsWith("graph-store-stub-"))
+            {
+                assertTrue(thread.getName(), thread.isDaemon());
+                workers++;
+            }
+        }
+        assertTrue(workers > 0);
+    }
+}
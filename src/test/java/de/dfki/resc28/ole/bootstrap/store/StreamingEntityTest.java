@@ -0,0 +1,91 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class StreamingEntityTest
+{
+    private static final String BODY = "<http://example.org/assets/3001> <http://purl.org/dc/terms/title> \"Brick 2 x 4\" .\n";
+
+    private static StreamingEntity entity(boolean gzip)
+    {
+        return new StreamingEntity(ContentType.create("application/n-triples", "UTF-8"), gzip)
+        {
+            protected void write(OutputStream out) throws IOException
+            {
+                for (int i = 0; i < 100; i++)
+                    out.write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    @Test
+    public void everyAttemptWritesTheSameBody() throws IOException
+    {
+        StreamingEntity entity = entity(false);
+
+        assertTrue(entity.isRepeatable());
+        byte[] first = written(entity);
+        assertArrayEquals(first, written(entity));
+        assertEquals(100 * BODY.length(), first.length);
+        assertEquals(first.length, entity.getBytesWritten());
+    }
+
+    @Test
+    public void compressedBodiesCountTheBytesSent() throws IOException
+    {
+        StreamingEntity entity = entity(true);
+
+        byte[] sent = written(entity);
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        assertEquals(sent.length, entity.getBytesWritten());
+        assertTrue(sent.length < 100 * BODY.length());
+        assertEquals(100 * BODY.length(), read(new GZIPInputStream(new ByteArrayInputStream(sent))).length);
+    }
+
+    @Test
+    public void theContentCanBeReadAsWritten() throws IOException
+    {
+        StreamingEntity entity = entity(true);
+
+        byte[] sent = written(entity);
+        long bytesWritten = entity.getBytesWritten();
+        assertArrayEquals(sent, EntityUtils.toByteArray(entity));
+        // reading the content sends nothing
+        assertEquals(bytesWritten, entity.getBytesWritten());
+    }
+
+    private static byte[] written(StreamingEntity entity) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+}
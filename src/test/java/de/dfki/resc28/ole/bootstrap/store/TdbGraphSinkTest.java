@@ -0,0 +1,171 @@
+/*
+ * This file is part of OLE. It is subject to the license terms in
+ * the LICENSE file found in the top-level directory of this distribution.
+ * You may not use this file except in compliance with the License.
+ */
+package de.dfki.resc28.ole.bootstrap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.shared.JenaException;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.vocabulary.DCTerms;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TdbGraphSinkTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 60000)
+    public void graphsCanBeAddedFromAnotherThreadThanTheOneThatCreatedThem() throws Exception
+    {
+        final File directory = folder.newFolder("tdb");
+        final TdbGraphSink sink = new TdbGraphSink(directory, 1000);
+
+        // leaves a write transaction open on the sink
+        sink.createNamedGraph("http://example.org/repo", model("repo"));
+
+        final Throwable[] failure = new Throwable[1];
+        Thread writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    sink.addToNamedGraph("http://example.org/repo", model("link"));
+                    sink.addToNamedGraph("http://example.org/assets/3001", model("3001"));
+                    sink.flush();
+                }
+                catch (Throwable e)
+                {
+                    failure[0] = e;
+                }
+            }
+        }, "graph-writer");
+        writer.start();
+        writer.join();
+
+        assertEquals(null, failure[0]);
+        sink.replaceNamedGraph("http://example.org/assets/3001", model("3001 replaced"));
+        sink.close();
+
+        Dataset dataset = TDBFactory.createDataset(directory.getPath());
+        dataset.begin(ReadWrite.READ);
+        try
+        {
+            assertEquals(2, dataset.getNamedModel("http://example.org/repo").size());
+            Model part = dataset.getNamedModel("http://example.org/assets/3001");
+            assertEquals(1, part.size());
+            assertFalse(part.listObjectsOfProperty(DCTerms.title).next().toString().equals("3001"));
+        }
+        finally
+        {
+            dataset.end();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void aCreatedGraphReplacesTheOneOfAnEarlierRun() throws Exception
+    {
+        File directory = folder.newFolder("tdb");
+        for (String title : new String[] { "repo", "repo again" })
+        {
+            TdbGraphSink sink = new TdbGraphSink(directory, 1000);
+            sink.createNamedGraph("http://example.org/repo", model(title));
+            sink.close();
+        }
+
+        assertEquals(1, size(directory, "http://example.org/repo"));
+    }
+
+    @Test(timeout = 60000)
+    public void aGraphThatFailsHalfWayIsNeverCommitted() throws Exception
+    {
+        File directory = folder.newFolder("tdb");
+        TdbGraphSink sink = new TdbGraphSink(directory, 1000);
+
+        try
+        {
+            sink.addToNamedGraph("http://example.org/assets/3001", brokenModel());
+            fail("The failure of the model must be thrown");
+        }
+        catch (JenaException e)
+        {
+            assertEquals("Unreadable part", e.getMessage());
+        }
+        sink.addToNamedGraph("http://example.org/assets/3002", model("3002"));
+        sink.close();
+
+        assertEquals(0, size(directory, "http://example.org/assets/3001"));
+        assertEquals(1, size(directory, "http://example.org/assets/3002"));
+    }
+
+    // a model that fails after its first statement
+    private static Model brokenModel()
+    {
+        final Triple first = model("3001").getGraph().find(Node.ANY, Node.ANY, Node.ANY).next();
+
+        return ModelFactory.createModelForGraph(new GraphBase()
+        {
+            @Override
+            protected ExtendedIterator<Triple> graphBaseFind(Triple pattern)
+            {
+                return new NiceIterator<Triple>()
+                {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next < 2;
+                    }
+
+                    @Override
+                    public Triple next()
+                    {
+                        if (next++ > 0)
+                            throw new JenaException("Unreadable part");
+                        return first;
+                    }
+                };
+            }
+        });
+    }
+
+    private static long size(File directory, String graphURI)
+    {
+        Dataset dataset = TDBFactory.createDataset(directory.getPath());
+        dataset.begin(ReadWrite.READ);
+        try
+        {
+            return dataset.getNamedModel(graphURI).size();
+        }
+        finally
+        {
+            dataset.end();
+        }
+    }
+
+    private static Model model(String title)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("http://example.org/" + title.replace(' ', '-')), DCTerms.title, title);
+        return model;
+    }
+}